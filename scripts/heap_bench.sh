@@ -0,0 +1,28 @@
+#!/bin/bash
+# Misura il picco dello heap durante il caricamento di ogni modulo e lo heap trattenuto al termine
+# dell'analisi, per ogni servizio degli esempi (o per i file passati come argomenti).
+# Uso: scripts/heap_bench.sh [file.ol ...]
+# Richiede `mvn package` (eseguire con bash dalla radice del progetto).
+# Con HEAP=<dimensione> (es. HEAP=64m) l'analisi gira con -Xmx limitato.
+
+JAR="$(realpath target/chorol-1.0-SNAPSHOT-jar-with-dependencies.jar)"
+
+if [ ! -f "$JAR" ]; then
+  echo "Errore: eseguire prima mvn package."
+  exit 1
+fi
+
+if [ $# -gt 0 ]; then
+  FILES=("$@")
+else
+  mapfile -t FILES < <(find src/main/resources/examples -name '*.ol' | sort)
+fi
+
+WORKDIR="$(mktemp -d)"
+trap 'rm -rf "$WORKDIR"' EXIT
+
+for file in "${FILES[@]}"; do
+  path="$(realpath "$file")"
+  echo "== $file"
+  (cd "$WORKDIR" && java ${HEAP:+-Xmx$HEAP} -cp "$JAR" it.unibo.tesi.chorol.Application --heap-report "$path" 2> /dev/null)
+done
@@ -0,0 +1,40 @@
+#!/bin/bash
+# Misura il tempo di avvio di un'esecuzione banale (calculator) in tre configurazioni:
+#   xml      logback.xml interpretato da Joran, senza AppCDS (comportamento precedente)
+#   default  configurazione programmatica di logback, senza AppCDS
+#   appcds   configurazione programmatica di logback con l'archivio AppCDS
+# Uso: scripts/startup_bench.sh [iterazioni]
+# Richiede `mvn package -Pcds` (eseguire con bash dalla radice del progetto).
+
+RUNS="${1:-10}"
+JAR="$(realpath target/chorol-1.0-SNAPSHOT-jar-with-dependencies.jar)"
+ARCHIVE="$(realpath -m target/chorol.jsa)"
+EXAMPLE="$(realpath src/main/resources/examples/calculator/CalculatorService.ol)"
+LOGBACK_XML="$(realpath src/main/resources/logback.xml)"
+
+if [ ! -f "$JAR" ] || [ ! -f "$ARCHIVE" ]; then
+  echo "Errore: eseguire prima mvn package -Pcds."
+  exit 1
+fi
+
+WORKDIR="$(mktemp -d)"
+trap 'rm -rf "$WORKDIR"' EXIT
+
+run() {
+  local name="$1"
+  shift
+  local total=0
+  for _ in $(seq "$RUNS"); do
+    local start end
+    start=$(date +%s%N)
+    (cd "$WORKDIR" && java "$@" -cp "$JAR" it.unibo.tesi.chorol.Application "$EXAMPLE" > /dev/null 2>&1)
+    end=$(date +%s%N)
+    total=$((total + (end - start) / 1000000))
+  done
+  printf "%-8s %6d ms\n" "$name" $((total / RUNS))
+}
+
+echo "Tempo medio di avvio su $RUNS esecuzioni:"
+run xml -Dlogback.configurationFile="$LOGBACK_XML"
+run default
+run appcds -XX:SharedArchiveFile="$ARCHIVE"
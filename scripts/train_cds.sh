@@ -0,0 +1,37 @@
+#!/bin/bash
+# Genera l'archivio AppCDS del jar con dipendenze eseguendo un'analisi di addestramento.
+# Uso: scripts/train_cds.sh <jar> <archivio> [esempio]
+
+JAR="$1"
+ARCHIVE="$2"
+EXAMPLE="${3:-src/main/resources/examples/calculator/CalculatorService.ol}"
+
+if [ ! -f "$JAR" ]; then
+  echo "Errore: il jar $JAR non esiste."
+  exit 1
+fi
+
+if [ ! -f "$EXAMPLE" ]; then
+  echo "Errore: l'esempio $EXAMPLE non esiste."
+  exit 1
+fi
+
+if [ -z "$JOLIE_HOME" ]; then
+  echo "Attenzione: JOLIE_HOME non impostata, gli import dei package standard non verranno risolti."
+fi
+
+JAR="$(realpath "$JAR")"
+ARCHIVE="$(realpath -m "$ARCHIVE")"
+EXAMPLE="$(realpath "$EXAMPLE")"
+WORKDIR="$(mktemp -d)"
+
+rm -f "$ARCHIVE"
+(cd "$WORKDIR" && java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$JAR" it.unibo.tesi.chorol.Application "$EXAMPLE" > /dev/null)
+rm -rf "$WORKDIR"
+
+if [ ! -f "$ARCHIVE" ]; then
+  echo "Errore: archivio AppCDS non generato."
+  exit 1
+fi
+
+echo "Archivio AppCDS generato in $ARCHIVE."
@@ -1,24 +1,79 @@
 package it.unibo.tesi.chorol;
 
 
+import it.unibo.tesi.chorol.monitor.MonitorAutomaton;
+import it.unibo.tesi.chorol.monitor.MonitorReport;
+import it.unibo.tesi.chorol.monitor.Property;
+import it.unibo.tesi.chorol.monitor.PropertyChecker;
+import it.unibo.tesi.chorol.monitor.PropertyResult;
+import it.unibo.tesi.chorol.monitor.TraceMonitor;
+import it.unibo.tesi.chorol.symbols.BindingChecker;
+import it.unibo.tesi.chorol.symbols.services.Service;
+import it.unibo.tesi.chorol.symbols.services.ServiceHolder;
+import it.unibo.tesi.chorol.utils.AnalysisSettings;
+import it.unibo.tesi.chorol.utils.DifferentialCheck;
+import it.unibo.tesi.chorol.utils.HeapUsage;
+import it.unibo.tesi.chorol.utils.LabelProjection;
 import it.unibo.tesi.chorol.utils.OutputSettings;
+import it.unibo.tesi.chorol.visitor.flow.BatchPipeline;
 import it.unibo.tesi.chorol.visitor.flow.FlowController;
+import it.unibo.tesi.chorol.visitor.flow.ShardCoordinator;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
 import jolie.lang.parse.ParserException;
 import jolie.lang.parse.module.ModuleException;
 import org.apache.commons.cli.*;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
 
 public class Application {
 	public static void main(String[] args) throws ParserException, IOException, ModuleException {
 		Options options = new Options();
 		options.addOption("T", "full-type", false, "Output completo del tipo");
+		options.addOption("P", "parallel", false, "Determinizzazione parallela");
+		options.addOption("c", "compositional", false, "Minimizza i frammenti durante la costruzione del grafo");
+		options.addOption("I", "interleaving", false, "Interleaving dei rami paralleli");
+		options.addOption("B", "dfa-budget", true, "Numero massimo di stati del DFA prima di ripiegare sull'NFA");
+		options.addOption(null, "dfa-memory", true, "Memoria massima (MB) della determinizzazione prima di ripiegare sull'NFA");
+		options.addOption(null, "sessions", true, "Sessioni concorrenti simultanee (* per un numero non limitato)");
+		options.addOption(null, "cache-dir", true, "Cartella della cache persistente degli automi minimizzati");
+		options.addOption(null, "cache-size", true, "Dimensione massima (MB) della cache persistente");
+		options.addOption(null, "offheap", true, "Cartella dei file mappati in memoria per gli stati visitati (il grafo resta sullo heap)");
+		options.addOption(null, "project-service", true, "Tiene solo le interazioni con i servizi che rispettano l'espressione regolare");
+		options.addOption(null, "project-direction", true, "Tiene solo le interazioni in ingresso (input) o in uscita (output)");
+		options.addOption(null, "project-operation", true, "Tiene solo le operazioni che rispettano l'espressione regolare");
+		options.addOption("m", "monitor", true, "Verifica una traccia di messaggi rispetto al protocollo estratto");
+		options.addOption(null, "shards", true, "Numero di thread del monitor");
+		options.addOption(null, "check", true, "Verifica le proprietà del file (una per riga) sul servizio e su quelli incorporati");
+		options.addOption(null, "self-check", true, "Confronta i percorsi ottimizzati con quello di riferimento su n casi casuali");
+		options.addOption(null, "seed", true, "Seme dei casi casuali di --self-check");
+		options.addOption(null, "heap-report", false, "Stampa il picco dello heap per modulo e lo heap trattenuto dopo il caricamento");
+		options.addOption(null, "batch", true, "Analizza in streaming tutti i programmi della cartella ed esporta un DOT per servizio");
+		options.addOption(null, "out", true, "Cartella dei DOT prodotti da --batch");
+		options.addOption(null, "workers", true, "Numero di thread di analisi di --batch");
+		options.addOption(null, "processes", true, "Numero di JVM tra cui ripartire --batch per componenti del grafo degli import");
+		options.addOption(null, "worker-heap", true, "Heap massimo (MB) di ogni JVM avviata da --processes");
+		options.addOption(null, "worker", false, "Worker di --processes: legge i file da stdin e scrive gli automi su stdout");
+		options.addOption(null, "check-bindings", false, "Verifica la compatibilità dei tipi sui binding delle porte");
 
 		CommandLineParser parser = new DefaultParser();
 		HelpFormatter formatter = new HelpFormatter();
 		CommandLine cmd;
+		int shards;
+		int selfCheck;
+		int workers;
+		int processes;
+		int workerHeap;
+		long seed;
 
 		try {
 			cmd = parser.parse(options, args);
@@ -30,14 +85,183 @@ public class Application {
 		}
 
 		if (cmd.hasOption("full-type") || cmd.hasOption("T")) OutputSettings.setFullType(true);
+		if (cmd.hasOption("parallel")) AnalysisSettings.setParallelDeterminization(true);
+		if (cmd.hasOption("compositional")) AnalysisSettings.setCompositionalMinimization(true);
+		if (cmd.hasOption("interleaving")) AnalysisSettings.setInterleaving(true);
+		if (cmd.hasOption("offheap")) AnalysisSettings.setStateStoreDirectory(Paths.get(cmd.getOptionValue("offheap")));
+		if (cmd.hasOption("cache-dir")) AnalysisSettings.setCacheDirectory(Paths.get(cmd.getOptionValue("cache-dir")));
+		try {
+			if (cmd.hasOption("dfa-budget"))
+				AnalysisSettings.setMaxDfaStates(Integer.parseInt(cmd.getOptionValue("dfa-budget")));
+			if (cmd.hasOption("dfa-memory"))
+				AnalysisSettings.setMaxDfaMemory(Long.parseLong(cmd.getOptionValue("dfa-memory")) * 1024 * 1024);
+			if (cmd.hasOption("sessions"))
+				AnalysisSettings.setSessions(cmd.getOptionValue("sessions").equals("*")
+						                             ? -1 : Integer.parseInt(cmd.getOptionValue("sessions")));
+			if (cmd.hasOption("cache-size"))
+				AnalysisSettings.setMaxCacheSize(Long.parseLong(cmd.getOptionValue("cache-size")) * 1024 * 1024);
+			if (cmd.hasOption("project-service") || cmd.hasOption("project-direction") || cmd.hasOption("project-operation"))
+				AnalysisSettings.setProjection(new LabelProjection(cmd.getOptionValue("project-service"),
+						cmd.getOptionValue("project-direction"), cmd.getOptionValue("project-operation")));
+			shards = Integer.parseInt(cmd.getOptionValue("shards", "1"));
+			selfCheck = Integer.parseInt(cmd.getOptionValue("self-check", "0"));
+			workers = Integer.parseInt(cmd.getOptionValue("workers", "1"));
+			processes = Integer.parseInt(cmd.getOptionValue("processes", "1"));
+			workerHeap = Integer.parseInt(cmd.getOptionValue("worker-heap", "0"));
+			seed = cmd.hasOption("seed") ? Long.parseLong(cmd.getOptionValue("seed")) : System.nanoTime();
+		} catch (NumberFormatException | PatternSyntaxException e) {
+			System.out.println(e.getMessage());
+			formatter.printHelp("ImpostaBooleano", options);
+			System.exit(1);
+			return;
+		}
 
-		String filename = "/home/kekko/Studio/tesi/chorol/src/main/resources/examples/spawn/client.ol";
+		if (selfCheck > 0) {
+			Application.selfCheck(selfCheck, seed);
+			return;
+		}
+		if (cmd.hasOption("worker")) {
+			// stdout è riservato agli automi: i log e le stampe vanno su stderr
+			PrintStream out = System.out;
+			System.setOut(System.err);
+			ShardCoordinator.serve(System.in, out, workers);
+			return;
+		}
+		if (cmd.hasOption("batch")) {
+			Application.batch(cmd, Paths.get(cmd.getOptionValue("batch")), Paths.get(cmd.getOptionValue("out", "flowgraphs")),
+					workers, processes, workerHeap);
+			return;
+		}
+
+		String filename = cmd.getArgList().isEmpty()
+				                  ? "/home/kekko/Studio/tesi/chorol/src/main/resources/examples/spawn/client.ol"
+				                  : cmd.getArgList().get(0);
 
 		args = new String[]{filename};
 
 		Path root = Paths.get(args[0]);
 		FlowController flowController = new FlowController(root);
+		if (cmd.hasOption("heap-report")) Application.heapReport(flowController);
+
+		if (cmd.hasOption("monitor") && flowController.getFlowGraph() != null)
+			Application.monitor(flowController.getFlowGraph(), Paths.get(cmd.getOptionValue("monitor")), shards);
+		if (cmd.hasOption("check") && flowController.getFlowGraph() != null)
+			Application.checkProperties(flowController, Paths.get(cmd.getOptionValue("check")));
+		if (cmd.hasOption("check-bindings"))
+			Application.checkBindings(flowController.getSymbolManager().getServiceHolder());
+	}
+
+	private static void heapReport(FlowController flowController) {
+		flowController.getSymbolManager().getPeakHeap()
+				.forEach((module, peak) -> System.out.printf("%-60s peak %8.1f MB%n", module, peak / 1048576.0));
+		System.out.printf("%-60s      %8.1f MB%n", "retained after the analysis", HeapUsage.retained() / 1048576.0);
+	}
+
+	private static void selfCheck(int cases, long seed) throws IOException {
+		long start = System.nanoTime();
+		DifferentialCheck check = new DifferentialCheck(seed);
+		check.graphs(cases);
+		Path directory = Files.createTempDirectory("chorol-check");
+		try {
+			check.programs(Math.max(1, cases / 10), directory);
+		} finally {
+			Files.deleteIfExists(directory);
+		}
+		check.getFailures().forEach(System.out::println);
+		System.out.printf("seed %d: %d cases checked, %d skipped, %d failures (%.1f ms)%n", seed, check.getChecked(),
+				check.getSkipped(), check.getFailures().size(), (System.nanoTime() - start) / 1e6);
+		if (!check.getFailures().isEmpty()) System.exit(2);
+	}
+
+	private static void batch(CommandLine cmd, Path input, Path output, int workers, int processes, int workerHeap)
+			throws IOException {
+		long start = System.nanoTime();
+		BatchPipeline.Report report;
+		try {
+			report = processes == 1
+					         ? new BatchPipeline(BatchPipeline.tree(input), BatchPipeline.dot(input, output), workers).run()
+					         : new ShardCoordinator(input, BatchPipeline.dot(input, output), processes, Application.workerCommand(cmd, workerHeap)).run();
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		report.failures().forEach(System.out::println);
+		System.out.printf("%s (%.1f ms)%n", report, (System.nanoTime() - start) / 1e6);
+		if (!report.failures().isEmpty()) System.exit(2);
+	}
 
+	/**
+	 * Comando di un worker: la stessa JVM e lo stesso classpath, con le opzioni di analisi ricevute
+	 * e senza quelle del coordinatore.
+	 */
+	private static List<String> workerCommand(CommandLine cmd, int workerHeap) {
+		List<String> command = new ArrayList<>();
+		command.add(ProcessHandle.current().info().command().orElse("java"));
+		if (workerHeap > 0) command.add("-Xmx" + workerHeap + "m");
+		command.addAll(List.of("-cp", System.getProperty("java.class.path"), Application.class.getName(), "--worker"));
+		Set<String> coordinator = Set.of("batch", "out", "processes", "worker-heap");
+		for (Option option : cmd.getOptions()) {
+			if (coordinator.contains(option.getLongOpt())) continue;
+			command.add("--" + option.getLongOpt());
+			if (option.hasArg()) command.add(option.getValue());
+		}
+		return command;
+	}
 
+	private static void checkProperties(FlowController flowController, Path file) throws IOException {
+		List<Property> properties = new ArrayList<>();
+		List<String> lines = Files.readAllLines(file);
+		try {
+			for (String line : lines)
+				if (!line.isBlank() && !line.strip().startsWith("#")) properties.add(Property.parse(line));
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Map<String, FlowGraph> graphs = new LinkedHashMap<>();
+		Service service = flowController.getService();
+		graphs.put(service != null ? service.name() : file.toString(), flowController.getFlowGraph());
+		if (service != null) graphs.putAll(flowController.getEmbeddedFlowGraphs(service));
+
+		int violated = 0;
+		for (Map.Entry<String, FlowGraph> entry : graphs.entrySet()) {
+			if (entry.getValue() == null) continue;
+			PropertyChecker checker = PropertyChecker.of(entry.getValue());
+			for (Property property : properties) {
+				PropertyResult result = checker.check(property);
+				System.out.printf("%s: %s%n", entry.getKey(), result);
+				if (!result.holds()) violated++;
+			}
+		}
+		System.out.printf("%d properties, %d services, %d violations%n", properties.size(), graphs.size(), violated);
+		if (violated > 0) System.exit(2);
+	}
+
+	private static void checkBindings(ServiceHolder serviceHolder) {
+		long start = System.nanoTime();
+		BindingChecker checker = new BindingChecker();
+		List<BindingChecker.Mismatch> mismatches = checker.check(serviceHolder);
+		mismatches.forEach(System.out::println);
+		System.out.printf("%d binding mismatches (%d type pairs, %.1f ms)%n", mismatches.size(),
+				checker.getTypeChecker().memoSize(), (System.nanoTime() - start) / 1e6);
+		if (!mismatches.isEmpty()) System.exit(2);
+	}
+
+	private static void monitor(FlowGraph flowGraph, Path trace, int shards) throws IOException {
+		MonitorReport report;
+		try {
+			report = new TraceMonitor(MonitorAutomaton.of(flowGraph), shards).run(trace);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		report.violations().forEach(System.out::println);
+		report.incomplete().forEach(session -> System.out.printf("session %s: incomplete at the end of the trace%n", session));
+		System.out.printf("%d events, %d sessions, %d violations, %d incomplete sessions%n",
+				report.events(), report.sessions(), report.violationCount(), report.incompleteCount());
+		if (report.violationCount() > 0) System.exit(2);
 	}
 }
@@ -0,0 +1,135 @@
+package it.unibo.tesi.chorol.monitor;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * DFA guidato da tabella, compilato dal FlowGraph minimizzato.
+ * Le etichette sono internate come byte UTF-8 in una tabella a indirizzamento aperto,
+ * così un evento letto dalla traccia si risolve nel suo id senza creare stringhe.
+ */
+public final class MonitorAutomaton {
+	public static final int REJECT = -1;
+	// oltre questa dimensione la tabella densa lascia il posto alla ricerca binaria sugli archi
+	private static final long MAX_TABLE_SIZE = 1L << 24;
+
+	private final CompactGraph graph;
+	private final int[] table;
+	private final byte[][] symbols;
+	private final int[] slots;
+	private final int[] hashes;
+	private final boolean[] accepting;
+
+	private MonitorAutomaton(CompactGraph graph) {
+		this.graph = graph;
+		int k = graph.alphabetSize();
+		long size = (long) graph.size() * k;
+		this.table = size <= MonitorAutomaton.MAX_TABLE_SIZE ? new int[(int) size] : null;
+		if (this.table != null) Arrays.fill(this.table, MonitorAutomaton.REJECT);
+		// una epsilon verso lo stato finale senza archi uscenti marca uno stato finale (vedi GraphUtils.joinFinalStates)
+		boolean endIsSink = graph.size() > 0 && graph.firstEdge(graph.end()) == graph.lastEdge(graph.end());
+		this.accepting = new boolean[graph.size()];
+		for (int s = 0; s < graph.size(); s++)
+			for (int e = graph.firstEdge(s); e < graph.lastEdge(s); e++) {
+				if (graph.label(e) == CompactGraph.EPSILON && endIsSink && graph.target(e) == graph.end()) {
+					this.accepting[s] = true;
+					continue;
+				}
+				if (graph.label(e) == CompactGraph.EPSILON || (e > graph.firstEdge(s) && graph.label(e) == graph.label(e - 1)))
+					throw new IllegalArgumentException("The flow graph is not deterministic, state " + s);
+				if (this.table != null) this.table[s * k + graph.label(e)] = graph.target(e);
+			}
+
+		this.symbols = new byte[k][];
+		this.hashes = new int[k];
+		this.slots = new int[Integer.highestOneBit(Math.max(k, 1) * 4 - 1) << 1];
+		Arrays.fill(this.slots, -1);
+		for (int id = 0; id < k; id++) {
+			this.symbols[id] = Guard.display(graph.symbol(id)).getBytes(StandardCharsets.UTF_8);
+			this.hashes[id] = MonitorAutomaton.hash(ByteBuffer.wrap(this.symbols[id]), 0, this.symbols[id].length);
+			int slot = this.hashes[id] & (this.slots.length - 1);
+			while (this.slots[slot] >= 0) slot = (slot + 1) & (this.slots.length - 1);
+			this.slots[slot] = id;
+		}
+	}
+
+	/**
+	 * Compila un grafo deterministico, tipicamente l'uscita di {@link it.unibo.tesi.chorol.utils.GraphUtils#clearGraph}.
+	 * Se il grafo è rimasto un NFA (budget superato) la compilazione fallisce.
+	 */
+	public static MonitorAutomaton of(FlowGraph flowGraph) {
+		return new MonitorAutomaton(CompactGraph.of(flowGraph));
+	}
+
+	public int start() {
+		return this.graph.start();
+	}
+
+	public int size() {
+		return this.graph.size();
+	}
+
+	public int alphabetSize() {
+		return this.graph.alphabetSize();
+	}
+
+	public String symbol(int label) {
+		return this.graph.symbol(label);
+	}
+
+	/**
+	 * Vero se una sessione può terminare nello stato: lo stato finale del grafo, uno collegato a esso
+	 * con una epsilon, oppure uno di tipo END, EXIT o FAULT.
+	 */
+	public boolean isFinal(int state) {
+		StateType type = this.graph.type(state);
+		return state == this.graph.end() || this.accepting[state] ||
+				       type == StateType.END || type == StateType.EXIT || type == StateType.FAULT;
+	}
+
+	/**
+	 * Stato raggiunto leggendo l'etichetta, oppure {@link #REJECT}.
+	 */
+	public int next(int state, int label) {
+		if (this.table != null) return this.table[state * this.graph.alphabetSize() + label];
+		int low = this.graph.firstEdge(state), high = this.graph.lastEdge(state) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int current = this.graph.label(middle);
+			if (current < label) low = middle + 1;
+			else if (current > label) high = middle - 1;
+			else return this.graph.target(middle);
+		}
+		return MonitorAutomaton.REJECT;
+	}
+
+	/**
+	 * Id dell'etichetta contenuta nei byte [from, to) del buffer, oppure {@link #REJECT} se non appartiene all'alfabeto.
+	 */
+	public int labelId(ByteBuffer buffer, int from, int to) {
+		int hash = MonitorAutomaton.hash(buffer, from, to);
+		int slot = hash & (this.slots.length - 1);
+		for (int id; (id = this.slots[slot]) >= 0; slot = (slot + 1) & (this.slots.length - 1))
+			if (this.hashes[id] == hash && this.matches(this.symbols[id], buffer, from, to)) return id;
+		return MonitorAutomaton.REJECT;
+	}
+
+	private boolean matches(byte[] symbol, ByteBuffer buffer, int from, int to) {
+		if (symbol.length != to - from) return false;
+		for (int i = 0; i < symbol.length; i++)
+			if (symbol[i] != buffer.get(from + i)) return false;
+		return true;
+	}
+
+	private static int hash(ByteBuffer buffer, int from, int to) {
+		int hash = 0x811c9dc5;
+		for (int i = from; i < to; i++) hash = (hash ^ buffer.get(i)) * 0x01000193;
+		return hash ^ (hash >>> 16);
+	}
+}
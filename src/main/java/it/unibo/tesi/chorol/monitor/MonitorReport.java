@@ -0,0 +1,22 @@
+package it.unibo.tesi.chorol.monitor;
+
+import java.util.List;
+
+/**
+ * Esito del monitoraggio di una traccia; le violazioni riportate sono al più {@link TraceMonitor#MAX_REPORTED}
+ * per shard, in ordine di offset, mentre il conteggio le include tutte. Le sessioni incomplete, rimaste
+ * a fine traccia in uno stato non finale, sono riportate allo stesso modo, in ordine di id.
+ */
+public record MonitorReport(long events, long sessions, long violationCount, List<Violation> violations,
+                            long incompleteCount, List<String> incomplete) {
+
+	/**
+	 * Evento non ammesso dal protocollo: offset in byte della riga nella traccia, sessione ed etichetta letta.
+	 */
+	public record Violation(long offset, String session, String label) {
+		@Override
+		public String toString() {
+			return String.format("offset %d: session %s, unexpected %s", this.offset, this.session, this.label);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package it.unibo.tesi.chorol.monitor;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Automa (di Büchi) che riconosce le violazioni di una proprietà, letto da una riga di testo:
+ * <ul>
+ *     <li>{@code never A}: nessun evento A;</li>
+ *     <li>{@code absent A after B}: nessun evento A dopo un evento B;</li>
+ *     <li>{@code response A -> B}: ogni evento A è seguito prima o poi da un evento B.</li>
+ * </ul>
+ * Un evento è un'espressione regolare cercata nell'etichetta mostrata, con le righe separate da spazi
+ * (ad esempio {@code Input REQUEST login@}), oppure {@code <END>}, {@code <EXIT>} o {@code <FAULT>}
+ * per l'ingresso in uno stato di quel tipo.
+ * Raggiungere uno stato di errore è una violazione; restare in uno stato accettante all'infinito,
+ * o terminare in uno stato accettante, è una violazione.
+ */
+public final class Property {
+	private final String text;
+	private final int size;
+	private final boolean[] error;
+	private final boolean[] accepting;
+	private final List<Transition> transitions = new ArrayList<>();
+
+	private Property(String text, int size) {
+		this.text = text;
+		this.size = size;
+		this.error = new boolean[size];
+		this.accepting = new boolean[size];
+	}
+
+	/**
+	 * Proprietà descritta dalla riga; lancia {@link IllegalArgumentException} se la sintassi non è valida.
+	 */
+	public static Property parse(String line) {
+		String text = line.strip();
+		String[] words = text.split("\\s+", 2);
+		if (words.length < 2) throw new IllegalArgumentException("Incomplete property: " + text);
+		Property property;
+		switch (words[0]) {
+			case "never" -> {
+				property = new Property(text, 2);
+				property.add(0, null, false, 0);
+				property.add(0, Property.event(words[1]), false, 1);
+				property.error[1] = true;
+			}
+			case "absent" -> {
+				String[] events = Property.split(words[1], " after ", text);
+				property = new Property(text, 3);
+				property.add(0, null, false, 0);
+				property.add(0, Property.event(events[1]), false, 1);
+				property.add(1, null, false, 1);
+				property.add(1, Property.event(events[0]), false, 2);
+				property.error[2] = true;
+			}
+			case "response" -> {
+				String[] events = Property.split(words[1], " -> ", text);
+				property = new Property(text, 2);
+				property.add(0, null, false, 0);
+				property.add(0, Property.event(events[0]), false, 1);
+				property.add(1, Property.event(events[1]), true, 1);
+				property.accepting[1] = true;
+			}
+			default -> throw new IllegalArgumentException("Unknown property kind: " + words[0]);
+		}
+		return property;
+	}
+
+	private static String[] split(String events, String separator, String text) {
+		int at = events.indexOf(separator);
+		if (at < 0) throw new IllegalArgumentException("Missing '" + separator.strip() + "' in property: " + text);
+		return new String[]{events.substring(0, at).strip(), events.substring(at + separator.length()).strip()};
+	}
+
+	private static Event event(String text) {
+		for (StateType type : List.of(StateType.END, StateType.EXIT, StateType.FAULT))
+			if (text.equals("<" + type + ">")) return new Event(null, type);
+		try {
+			return new Event(Pattern.compile(text), null);
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("Invalid event " + text + ": " + e.getDescription());
+		}
+	}
+
+	private void add(int from, Event event, boolean negated, int to) {
+		this.transitions.add(new Transition(from, event, negated, to));
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	boolean isError(int state) {
+		return this.error[state];
+	}
+
+	boolean isAccepting(int state) {
+		return this.accepting[state];
+	}
+
+	boolean hasAccepting() {
+		for (boolean a : this.accepting)
+			if (a) return true;
+		return false;
+	}
+
+	/**
+	 * Maschera degli stati raggiunti da {@code state} leggendo un'etichetta (già mostrata con spazi)
+	 * oppure, se {@code label} è null, l'ingresso in uno stato del tipo indicato.
+	 */
+	int step(int state, String label, StateType type) {
+		int next = 0;
+		for (Transition transition : this.transitions)
+			if (transition.from() == state && transition.matches(label, type) != transition.negated())
+				next |= 1 << transition.to();
+		return next;
+	}
+
+	@Override
+	public String toString() {
+		return this.text;
+	}
+
+	/**
+	 * Evento di una transizione: un'espressione regolare sulle etichette oppure un tipo di stato.
+	 */
+	private record Event(Pattern pattern, StateType type) {
+	}
+
+	/**
+	 * Transizione su un evento (tutti se null), o su tutti gli eventi diversi se {@code negated}.
+	 */
+	private record Transition(int from, Event event, boolean negated, int to) {
+		boolean matches(String label, StateType type) {
+			if (this.event == null) return true;
+			if (label == null) return this.event.type() == type;
+			return this.event.pattern() != null && this.event.pattern().matcher(label).find();
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package it.unibo.tesi.chorol.monitor;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Verifica di proprietà sul prodotto, costruito al volo, tra un {@link Property} e l'automa di un servizio
+ * (o di una composizione di servizi). Lo stato del prodotto {@code s * k + q} unisce lo stato s del grafo
+ * e lo stato q della proprietà; i successori sono calcolati solo quando servono, e si ricordano solo gli
+ * stati visitati, in insiemi hash, senza tabelle grandi quanto il prodotto.
+ * Una nested DFS cerca insieme le violazioni finite e i cicli accettanti, fermandosi alla prima violazione.
+ * Solo dopo, visite in ampiezza accorciano il controesempio: la violazione finita più corta, oppure
+ * il cammino minimo fino al seme del ciclo e il ciclo minimo che lo contiene.
+ */
+public final class PropertyChecker {
+	private final CompactGraph graph;
+
+	public PropertyChecker(CompactGraph graph) {
+		this.graph = graph;
+	}
+
+	public static PropertyChecker of(FlowGraph flowGraph) {
+		return new PropertyChecker(CompactGraph.of(flowGraph));
+	}
+
+	public PropertyResult check(Property property) {
+		return new Product(property).check();
+	}
+
+	/**
+	 * Etichetta come appare nei controesempi e come viene confrontata con gli eventi delle proprietà.
+	 */
+	static String display(String label) {
+		return Guard.display(label).replace("\\n", " ");
+	}
+
+	private final class Product {
+		// esito di search quando trova una violazione finita
+		private static final int FINITE = -2;
+		private final Property property;
+		private final int k;
+		// stati della proprietà raggiunti da q leggendo l'etichetta l: labelStep[l][q]
+		private final int[][] labelStep;
+		// stati della proprietà raggiunti da q entrando in uno stato del tipo t: typeStep[t][q], null se t non è un evento
+		private final int[][] typeStep = new int[StateType.values().length][];
+		private long explored;
+
+		Product(Property property) {
+			CompactGraph graph = PropertyChecker.this.graph;
+			this.property = property;
+			this.k = property.size();
+			if ((long) graph.size() * this.k > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Product too large: " + graph.size() + " x " + this.k);
+			this.labelStep = new int[graph.alphabetSize()][this.k];
+			for (int l = 0; l < graph.alphabetSize(); l++) {
+				String label = PropertyChecker.display(graph.symbol(l));
+				for (int q = 0; q < this.k; q++) this.labelStep[l][q] = property.step(q, label, null);
+			}
+			for (StateType type : List.of(StateType.END, StateType.EXIT, StateType.FAULT)) {
+				this.typeStep[type.ordinal()] = new int[this.k];
+				for (int q = 0; q < this.k; q++) this.typeStep[type.ordinal()][q] = property.step(q, null, type);
+			}
+		}
+
+		PropertyResult check() {
+			if (PropertyChecker.this.graph.size() == 0) return new PropertyResult(this.property, null, -1, 0);
+			int root = PropertyChecker.this.graph.start() * this.k;
+			int seed = this.search(root);
+			if (seed == -1) return this.result(null, -1);
+			if (seed == Product.FINITE) return this.result(this.finiteViolation(root), -1);
+			List<String> trace = seed == root ? new ArrayList<>() : this.shortestPath(root, seed);
+			int loop = trace.size();
+			trace.addAll(this.shortestPath(seed, seed));
+			return this.result(trace, loop);
+		}
+
+		private PropertyResult result(List<String> trace, int loop) {
+			return new PropertyResult(this.property, trace, loop, this.explored);
+		}
+
+		private boolean terminal(int s) {
+			CompactGraph graph = PropertyChecker.this.graph;
+			return s == graph.end() || graph.firstEdge(s) == graph.lastEdge(s);
+		}
+
+		private boolean finiteAt(int p) {
+			return this.property.isAccepting(p % this.k) && this.terminal(p / this.k);
+		}
+
+		/**
+		 * Stati del prodotto raggiunti con un arco del grafo, con l'arco usato; gli archi epsilon non fanno
+		 * avanzare la proprietà, l'ingresso in uno stato END/EXIT/FAULT la fa avanzare dopo l'etichetta.
+		 */
+		private Successors successors(int p) {
+			CompactGraph graph = PropertyChecker.this.graph;
+			int s = p / this.k, q = p % this.k;
+			int first = graph.firstEdge(s), last = graph.lastEdge(s);
+			int[] states = new int[(last - first) * this.k];
+			int[] edges = new int[states.length];
+			int size = 0;
+			for (int e = first; e < last; e++) {
+				int t = graph.target(e);
+				int mask = 1 << q;
+				if (graph.label(e) != CompactGraph.EPSILON) mask = this.step(mask, this.labelStep[graph.label(e)]);
+				if (this.typeStep[graph.type(t).ordinal()] != null) mask = this.step(mask, this.typeStep[graph.type(t).ordinal()]);
+				for (int next = 0; next < this.k; next++)
+					if ((mask & (1 << next)) != 0) {
+						states[size] = t * this.k + next;
+						edges[size++] = e;
+					}
+			}
+			return new Successors(states, edges, size);
+		}
+
+		private int step(int mask, int[] step) {
+			int next = 0;
+			for (int q = 0; q < this.k; q++)
+				if ((mask & (1 << q)) != 0) next |= step[q];
+			return next;
+		}
+
+		/**
+		 * Nested DFS: la visita blu si ferma al primo stato accettante terminale o arco verso un errore
+		 * (violazione finita, {@link #FINITE}); quando abbandona uno stato accettante, la visita rossa cerca
+		 * un ciclo che torni a quello stato, e gli stati visitati in rosso non vengono più riesplorati.
+		 * Restituisce lo stato accettante sul ciclo, -1 se non ci sono violazioni.
+		 */
+		private int search(int root) {
+			Set<Integer> blue = new HashSet<>();
+			Set<Integer> red = new HashSet<>();
+			List<Frame> stack = new ArrayList<>();
+			blue.add(root);
+			if (this.finiteAt(root)) return Product.FINITE;
+			stack.add(new Frame(root, this.successors(root)));
+			try {
+				while (!stack.isEmpty()) {
+					Frame frame = stack.get(stack.size() - 1);
+					if (frame.next < frame.successors.size()) {
+						int next = frame.successors.states()[frame.next++];
+						if (this.property.isError(next % this.k) || (!blue.contains(next) && this.finiteAt(next)))
+							return Product.FINITE;
+						if (!blue.add(next)) continue;
+						stack.add(new Frame(next, this.successors(next)));
+						continue;
+					}
+					stack.remove(stack.size() - 1);
+					if (this.property.isAccepting(frame.state % this.k) && this.reaches(frame.state, red)) return frame.state;
+				}
+				return -1;
+			} finally {
+				this.explored = blue.size();
+			}
+		}
+
+		private boolean reaches(int seed, Set<Integer> red) {
+			List<Frame> stack = new ArrayList<>();
+			stack.add(new Frame(seed, this.successors(seed)));
+			while (!stack.isEmpty()) {
+				Frame frame = stack.get(stack.size() - 1);
+				if (frame.next == frame.successors.size()) {
+					stack.remove(stack.size() - 1);
+					continue;
+				}
+				int next = frame.successors.states()[frame.next++];
+				if (next == seed) return true;
+				if (!red.add(next)) continue;
+				stack.add(new Frame(next, this.successors(next)));
+			}
+			return false;
+		}
+
+		/**
+		 * Violazione finita più corta, con una visita in ampiezza: search ne ha già trovata una.
+		 */
+		private List<String> finiteViolation(int root) {
+			Map<Integer, Step> steps = new HashMap<>();
+			steps.put(root, new Step(-1, -1));
+			ArrayDeque<Integer> queue = new ArrayDeque<>(List.of(root));
+			while (!queue.isEmpty()) {
+				int p = queue.poll();
+				if (this.finiteAt(p)) return this.trace(steps, root, p);
+				Successors successors = this.successors(p);
+				for (int i = 0; i < successors.size(); i++) {
+					int next = successors.states()[i];
+					if (this.property.isError(next % this.k)) {
+						List<String> trace = this.trace(steps, root, p);
+						this.append(trace, successors.edges()[i]);
+						return trace;
+					}
+					if (steps.putIfAbsent(next, new Step(p, successors.edges()[i])) == null) queue.add(next);
+				}
+			}
+			throw new IllegalStateException("No finite violation from product state " + root);
+		}
+
+		/**
+		 * Etichette del cammino più corto e non vuoto da {@code from} a {@code to}, con una visita in ampiezza;
+		 * con {@code from == to} è il ciclo più corto che passa per lo stato.
+		 */
+		private List<String> shortestPath(int from, int to) {
+			Map<Integer, Step> steps = new HashMap<>();
+			ArrayDeque<Integer> queue = new ArrayDeque<>(List.of(from));
+			while (!queue.isEmpty()) {
+				int p = queue.poll();
+				Successors successors = this.successors(p);
+				for (int i = 0; i < successors.size(); i++) {
+					int next = successors.states()[i];
+					if (next == to) {
+						List<String> trace = this.trace(steps, from, p);
+						this.append(trace, successors.edges()[i]);
+						return trace;
+					}
+					if (next != from && steps.putIfAbsent(next, new Step(p, successors.edges()[i])) == null) queue.add(next);
+				}
+			}
+			throw new IllegalStateException("No path from product state " + from + " to " + to);
+		}
+
+		private List<String> trace(Map<Integer, Step> steps, int from, int p) {
+			List<Integer> edges = new ArrayList<>();
+			for (int current = p; current != from; current = steps.get(current).previous())
+				edges.add(steps.get(current).edge());
+			Collections.reverse(edges);
+			List<String> trace = new ArrayList<>();
+			edges.forEach(edge -> this.append(trace, edge));
+			return trace;
+		}
+
+		private void append(List<String> trace, int edge) {
+			int label = PropertyChecker.this.graph.label(edge);
+			if (label != CompactGraph.EPSILON) trace.add(PropertyChecker.display(PropertyChecker.this.graph.symbol(label)));
+		}
+	}
+
+	/**
+	 * Stato precedente e arco usato per raggiungere uno stato del prodotto in una visita in ampiezza.
+	 */
+	private record Step(int previous, int edge) {
+	}
+
+	private record Successors(int[] states, int[] edges, int size) {
+	}
+
+	private static final class Frame {
+		private final int state;
+		private final Successors successors;
+		private int next;
+
+		Frame(int state, Successors successors) {
+			this.state = state;
+			this.successors = successors;
+		}
+	}
+}
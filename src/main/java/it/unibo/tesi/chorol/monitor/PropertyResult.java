@@ -0,0 +1,24 @@
+package it.unibo.tesi.chorol.monitor;
+
+import java.util.List;
+
+/**
+ * Esito della verifica di una proprietà. Se è violata, {@code trace} è il controesempio più corto trovato:
+ * le etichette di una esecuzione finita oppure, se {@code loop} non è negativo, di un lazo che ripete
+ * all'infinito le etichette da {@code loop} in poi. {@code explored} conta gli stati del prodotto visitati.
+ */
+public record PropertyResult(Property property, List<String> trace, int loop, long explored) {
+
+	public boolean holds() {
+		return this.trace == null;
+	}
+
+	@Override
+	public String toString() {
+		if (this.holds()) return String.format("holds: %s (%d product states)", this.property, this.explored);
+		String prefix = String.join(", ", this.loop < 0 ? this.trace : this.trace.subList(0, this.loop));
+		if (this.loop < 0) return String.format("violated: %s%n  trace: [%s]", this.property, prefix);
+		return String.format("violated: %s%n  trace: [%s] then forever [%s]", this.property, prefix,
+				String.join(", ", this.trace.subList(this.loop, this.trace.size())));
+	}
+}
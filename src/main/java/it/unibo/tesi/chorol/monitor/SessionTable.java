@@ -0,0 +1,133 @@
+package it.unibo.tesi.chorol.monitor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Mappa id di correlazione → stato del DFA, a indirizzamento aperto su array primitivi:
+ * nessun boxing e nessun oggetto per sessione. Gli id sono confrontati byte per byte
+ * (quindi {@code 007} e {@code 7} sono sessioni diverse) e copiati in un'unica area alla prima occorrenza.
+ */
+final class SessionTable {
+	private static final int EMPTY = Integer.MIN_VALUE;
+
+	private long[] hashes;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] values;
+	private byte[] arena;
+	private int arenaSize;
+	private int size;
+
+	SessionTable() {
+		this.allocate(1024);
+		this.arena = new byte[16 * 1024];
+	}
+
+	/**
+	 * Hash a 64 bit (FNV-1a) dei byte [from, to) dell'id.
+	 */
+	static long hash(ByteBuffer buffer, int from, int to) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = from; i < to; i++) hash = (hash ^ buffer.get(i)) * 0x100000001b3L;
+		return hash;
+	}
+
+	static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		return key ^ (key >>> 33);
+	}
+
+	/**
+	 * Posizione della sessione con id nei byte [from, to) del buffer; se non è ancora stata vista
+	 * viene inserita con stato {@code initial}. La posizione resta valida fino al prossimo inserimento.
+	 */
+	int slotOf(long hash, ByteBuffer buffer, int from, int to, int initial) {
+		int mask = this.values.length - 1;
+		int slot = (int) SessionTable.mix(hash) & mask;
+		for (; this.values[slot] != SessionTable.EMPTY; slot = (slot + 1) & mask)
+			if (this.hashes[slot] == hash && this.matches(slot, buffer, from, to)) return slot;
+		if ((this.size + 1) * 2 > this.values.length) {
+			this.grow();
+			return this.slotOf(hash, buffer, from, to, initial);
+		}
+		int length = to - from;
+		if (this.arenaSize + length > this.arena.length) {
+			if ((long) this.arenaSize + length > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException("Too many session ids in one shard");
+			this.arena = Arrays.copyOf(this.arena, (int) Math.min(Integer.MAX_VALUE - 8,
+					Math.max(2L * this.arena.length, (long) this.arenaSize + length)));
+		}
+		buffer.get(from, this.arena, this.arenaSize, length);
+		this.hashes[slot] = hash;
+		this.offsets[slot] = this.arenaSize;
+		this.lengths[slot] = length;
+		this.values[slot] = initial;
+		this.arenaSize += length;
+		this.size++;
+		return slot;
+	}
+
+	int state(int slot) {
+		return this.values[slot];
+	}
+
+	void setState(int slot, int state) {
+		this.values[slot] = state;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Numero di posizioni, occupate o no, per scorrere la tabella con {@link #used}.
+	 */
+	int capacity() {
+		return this.values.length;
+	}
+
+	boolean used(int slot) {
+		return this.values[slot] != SessionTable.EMPTY;
+	}
+
+	String id(int slot) {
+		return new String(this.arena, this.offsets[slot], this.lengths[slot], StandardCharsets.UTF_8);
+	}
+
+	private boolean matches(int slot, ByteBuffer buffer, int from, int to) {
+		if (this.lengths[slot] != to - from) return false;
+		int offset = this.offsets[slot];
+		for (int i = from; i < to; i++)
+			if (this.arena[offset++] != buffer.get(i)) return false;
+		return true;
+	}
+
+	private void allocate(int capacity) {
+		this.hashes = new long[capacity];
+		this.offsets = new int[capacity];
+		this.lengths = new int[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(this.values, SessionTable.EMPTY);
+	}
+
+	private void grow() {
+		long[] oldHashes = this.hashes;
+		int[] oldOffsets = this.offsets, oldLengths = this.lengths, oldValues = this.values;
+		this.allocate(oldValues.length * 2);
+		int mask = this.values.length - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] == SessionTable.EMPTY) continue;
+			int slot = (int) SessionTable.mix(oldHashes[i]) & mask;
+			while (this.values[slot] != SessionTable.EMPTY) slot = (slot + 1) & mask;
+			this.hashes[slot] = oldHashes[i];
+			this.offsets[slot] = oldOffsets[i];
+			this.lengths[slot] = oldLengths[i];
+			this.values[slot] = oldValues[i];
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package it.unibo.tesi.chorol.monitor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Verifica in streaming che una traccia di messaggi rispetti il protocollo estratto.
+ * Ogni riga è {@code <id di correlazione> <etichetta>}, con l'etichetta nel formato dei RequestEdge;
+ * gli id sono confrontati byte per byte.
+ * Il file viene letto a giri: a ogni giro ciascuno shard mappa e scompone un blocco diverso, allineato alle righe,
+ * e smista gli eventi verso lo shard che possiede la sessione (per hash dell'id); poi ogni shard applica
+ * all'automa i propri eventi, un blocco dopo l'altro. Lettura e automa sono quindi divisi tra i thread
+ * e l'ordine per sessione è preservato. A fine traccia le sessioni rimaste in uno stato non finale
+ * vengono riportate come incomplete.
+ */
+public class TraceMonitor {
+	public static final int MAX_REPORTED = 1000;
+	private static final long BLOCK_SIZE = 64L * 1024 * 1024;
+
+	private final MonitorAutomaton automaton;
+	private final int shards;
+
+	public TraceMonitor(MonitorAutomaton automaton, int shards) {
+		if (shards < 1) throw new IllegalArgumentException("The number of shards must be positive");
+		this.automaton = automaton;
+		this.shards = shards;
+	}
+
+	public MonitorReport run(Path trace) throws IOException {
+		List<Shard> owners = new ArrayList<>();
+		for (int shard = 0; shard < this.shards; shard++) owners.add(new Shard());
+		ExecutorService executor = this.shards == 1 ? null : Executors.newFixedThreadPool(this.shards);
+		try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			long position = 0;
+			while (position < fileSize) {
+				List<Block> blocks = new ArrayList<>();
+				for (int i = 0; i < this.shards && position < fileSize; i++) {
+					long end = TraceMonitor.lineEnd(channel, Math.min(position + TraceMonitor.BLOCK_SIZE, fileSize), fileSize);
+					if (end - position > Integer.MAX_VALUE)
+						throw new IOException(String.format("Line at offset %d is longer than %d bytes", position, Integer.MAX_VALUE));
+					blocks.add(new Block(position, channel.map(FileChannel.MapMode.READ_ONLY, position, end - position), this.shards));
+					position = end;
+				}
+				List<Runnable> tasks = new ArrayList<>();
+				for (Block block : blocks) tasks.add(() -> this.split(block));
+				TraceMonitor.runAll(executor, tasks);
+				tasks.clear();
+				for (int shard = 0; shard < this.shards; shard++) {
+					Shard owner = owners.get(shard);
+					int owned = shard;
+					tasks.add(() -> blocks.forEach(block -> owner.apply(this.automaton, block, block.events[owned])));
+				}
+				TraceMonitor.runAll(executor, tasks);
+			}
+		} finally {
+			if (executor != null) executor.shutdownNow();
+		}
+
+		long events = 0, sessions = 0, violationCount = 0, incompleteCount = 0;
+		List<MonitorReport.Violation> violations = new ArrayList<>();
+		List<String> incomplete = new ArrayList<>();
+		for (Shard owner : owners) {
+			events += owner.events;
+			sessions += owner.sessions.size();
+			violationCount += owner.violationCount;
+			violations.addAll(owner.violations);
+			for (int slot = 0; slot < owner.sessions.capacity(); slot++)
+				if (owner.sessions.used(slot) && !this.automaton.isFinal(owner.sessions.state(slot)))
+					if (incompleteCount++ < TraceMonitor.MAX_REPORTED) incomplete.add(owner.sessions.id(slot));
+		}
+		violations.sort(Comparator.comparingLong(MonitorReport.Violation::offset));
+		Collections.sort(incomplete);
+		return new MonitorReport(events, sessions, violationCount, violations, incompleteCount, incomplete);
+	}
+
+	/**
+	 * Scompone le righe del blocco e assegna ogni evento allo shard della sua sessione.
+	 */
+	private void split(Block block) {
+		ByteBuffer buffer = block.buffer;
+		int limit = buffer.limit();
+		int line = 0;
+		while (line < limit) {
+			int newline = line;
+			while (newline < limit && buffer.get(newline) != '\n') newline++;
+			int to = newline > line && buffer.get(newline - 1) == '\r' ? newline - 1 : newline;
+			int space = line;
+			while (space < to && buffer.get(space) != ' ') space++;
+			if (space > line && space < to) {
+				long hash = SessionTable.hash(buffer, line, space);
+				// la tabella usa i bit bassi dell'hash mescolato, lo smistamento quelli alti
+				int owner = (int) Long.remainderUnsigned(SessionTable.mix(hash) >>> 32, this.shards);
+				block.events[owner].add(hash, line, space, to, this.automaton.labelId(buffer, space + 1, to));
+			}
+			line = newline + 1;
+		}
+	}
+
+	/**
+	 * Fine della riga che contiene il byte {@code from - 1}, cioè il primo inizio di riga non prima di {@code from}.
+	 */
+	private static long lineEnd(FileChannel channel, long from, long fileSize) throws IOException {
+		if (from >= fileSize) return fileSize;
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		for (long position = from - 1; position < fileSize; position += buffer.limit()) {
+			buffer.clear();
+			channel.read(buffer, position);
+			buffer.flip();
+			for (int i = 0; i < buffer.limit(); i++)
+				if (buffer.get(i) == '\n') return position + i + 1;
+		}
+		return fileSize;
+	}
+
+	private static void runAll(ExecutorService executor, List<Runnable> tasks) throws IOException {
+		if (executor == null) {
+			tasks.forEach(Runnable::run);
+			return;
+		}
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks.stream().map(Executors::callable).toList()))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Trace monitoring interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Trace monitoring failed", e.getCause());
+		}
+	}
+
+	private static String text(ByteBuffer buffer, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		buffer.get(from, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Blocco di righe mappato in memoria, con gli eventi già divisi per shard; resta mappato per tutto il giro.
+	 */
+	private static final class Block {
+		private final long position;
+		private final MappedByteBuffer buffer;
+		private final Events[] events;
+
+		Block(long position, MappedByteBuffer buffer, int shards) {
+			this.position = position;
+			this.buffer = buffer;
+			this.events = new Events[shards];
+			for (int shard = 0; shard < shards; shard++) this.events[shard] = new Events();
+		}
+	}
+
+	/**
+	 * Eventi di un blocco per uno shard: hash dell'id, inizio della riga, spazio, fine della riga e id dell'etichetta.
+	 */
+	private static final class Events {
+		private long[] hashes = new long[256];
+		private int[] lines = new int[256];
+		private int[] spaces = new int[256];
+		private int[] ends = new int[256];
+		private int[] labels = new int[256];
+		private int size;
+
+		void add(long hash, int line, int space, int end, int label) {
+			if (this.size == this.hashes.length) {
+				int capacity = this.size * 2;
+				this.hashes = Arrays.copyOf(this.hashes, capacity);
+				this.lines = Arrays.copyOf(this.lines, capacity);
+				this.spaces = Arrays.copyOf(this.spaces, capacity);
+				this.ends = Arrays.copyOf(this.ends, capacity);
+				this.labels = Arrays.copyOf(this.labels, capacity);
+			}
+			this.hashes[this.size] = hash;
+			this.lines[this.size] = line;
+			this.spaces[this.size] = space;
+			this.ends[this.size] = end;
+			this.labels[this.size++] = label;
+		}
+	}
+
+	/**
+	 * Sessioni possedute da uno shard, con i loro conteggi; usato da un solo thread per volta.
+	 */
+	private static final class Shard {
+		private final SessionTable sessions = new SessionTable();
+		private final List<MonitorReport.Violation> violations = new ArrayList<>();
+		private long events;
+		private long violationCount;
+
+		void apply(MonitorAutomaton automaton, Block block, Events owned) {
+			ByteBuffer buffer = block.buffer;
+			for (int i = 0; i < owned.size; i++) {
+				this.events++;
+				int slot = this.sessions.slotOf(owned.hashes[i], buffer, owned.lines[i], owned.spaces[i], automaton.start());
+				int label = owned.labels[i];
+				int next = label == MonitorAutomaton.REJECT ? MonitorAutomaton.REJECT : automaton.next(this.sessions.state(slot), label);
+				if (next != MonitorAutomaton.REJECT) this.sessions.setState(slot, next);
+				else if (this.violationCount++ < TraceMonitor.MAX_REPORTED)
+					this.violations.add(new MonitorReport.Violation(block.position + owned.lines[i],
+							TraceMonitor.text(buffer, owned.lines[i], owned.spaces[i]),
+							TraceMonitor.text(buffer, owned.spaces[i] + 1, owned.ends[i])));
+			}
+		}
+	}
+}
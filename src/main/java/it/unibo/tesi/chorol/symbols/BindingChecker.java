@@ -0,0 +1,79 @@
+package it.unibo.tesi.chorol.symbols;
+
+import it.unibo.tesi.chorol.symbols.interfaces.operations.OneWayOperation;
+import it.unibo.tesi.chorol.symbols.interfaces.operations.Operation;
+import it.unibo.tesi.chorol.symbols.interfaces.operations.ReqResOperation;
+import it.unibo.tesi.chorol.symbols.ports.EmbedPort;
+import it.unibo.tesi.chorol.symbols.ports.Port;
+import it.unibo.tesi.chorol.symbols.services.Service;
+import it.unibo.tesi.chorol.symbols.services.ServiceHolder;
+import it.unibo.tesi.chorol.symbols.types.TypeChecker;
+import jolie.lang.parse.ast.InputPortInfo;
+import jolie.lang.parse.ast.OutputPortInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Verifica i collegamenti tra porte: ogni operazione di una porta di output deve esistere nel servizio
+ * collegato (embedding o stessa location di una porta di input), con richiesta sottotipo di quella accettata
+ * e, per le request-response, risposta del servizio sottotipo di quella attesa.
+ */
+public class BindingChecker {
+	private final TypeChecker typeChecker = new TypeChecker();
+
+	public List<Mismatch> check(ServiceHolder serviceHolder) {
+		List<Mismatch> mismatches = new ArrayList<>();
+		for (Service service : serviceHolder.get())
+			for (Port<OutputPortInfo> port : service.getOutputPortHolder().get()) {
+				if (port instanceof EmbedPort<OutputPortInfo> embed && embed.getService() != null) {
+					Service target = embed.getService();
+					this.check(service, port, target.name(), target.getInputPortHolder()::getOperation, mismatches);
+					continue;
+				}
+				for (Service target : serviceHolder.get())
+					for (Port<InputPortInfo> input : target.getInputPortHolder().get())
+						if (BindingChecker.sameLocation(port, input))
+							this.check(service, port, target.name() + "." + input.getName(), input::getOperation, mismatches);
+			}
+		return mismatches;
+	}
+
+	public TypeChecker getTypeChecker() {
+		return this.typeChecker;
+	}
+
+	private static boolean sameLocation(Port<OutputPortInfo> output, Port<InputPortInfo> input) {
+		String location = output.getLocation();
+		return location != null && !location.equals("UNKNOWN") && !location.equals("local") &&
+				       location.equals(input.getLocation());
+	}
+
+	private void check(Service service, Port<OutputPortInfo> port, String target,
+	                   Function<String, Operation> provided, List<Mismatch> mismatches) {
+		for (String name : port.getOperationNames()) {
+			Operation required = port.getOperation(name);
+			Operation offered = provided.apply(name);
+			String reason = null;
+			if (offered == null) reason = "operation not provided";
+			else if (required instanceof OneWayOperation != offered instanceof OneWayOperation)
+				reason = "one-way/request-response mismatch";
+			else if (!this.typeChecker.isSubtype(required.getRequestType(), offered.getRequestType()))
+				reason = String.format("request %s does not conform to %s",
+						required.getRequestType().name(), offered.getRequestType().name());
+			else if (required instanceof ReqResOperation requiredRR && offered instanceof ReqResOperation offeredRR &&
+					         !this.typeChecker.isSubtype(offeredRR.getResponseType(), requiredRR.getResponseType()))
+				reason = String.format("response %s does not conform to %s",
+						offeredRR.getResponseType().name(), requiredRR.getResponseType().name());
+			if (reason != null) mismatches.add(new Mismatch(service.name(), port.getName(), name, target, reason));
+		}
+	}
+
+	public record Mismatch(String service, String port, String operation, String target, String reason) {
+		@Override
+		public String toString() {
+			return String.format("%s.%s -> %s: %s, %s", this.service, this.port, this.target, this.operation, this.reason);
+		}
+	}
+}
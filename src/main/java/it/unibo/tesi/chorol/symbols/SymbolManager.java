@@ -4,10 +4,12 @@ package it.unibo.tesi.chorol.symbols;
 import it.unibo.tesi.chorol.symbols.interfaces.InterfaceHolder;
 import it.unibo.tesi.chorol.symbols.services.ServiceHolder;
 import it.unibo.tesi.chorol.symbols.types.TypeHolder;
+import it.unibo.tesi.chorol.utils.HeapUsage;
 import jolie.lang.parse.ast.InterfaceDefinition;
 import jolie.lang.parse.ast.Program;
 import jolie.lang.parse.ast.ServiceNode;
 import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.module.ImportedSymbolInfo;
 import jolie.lang.parse.module.ModuleException;
 import jolie.lang.parse.module.ModuleFinderImpl;
 import jolie.lang.parse.module.SymbolTable;
@@ -19,10 +21,7 @@ import org.slf4j.LoggerFactory;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 import static it.unibo.tesi.chorol.utils.Misc.loadProgram;
 
@@ -32,42 +31,52 @@ public class SymbolManager {
 	private final TypeHolder typeHolder = new TypeHolder();
 	private final InterfaceHolder interfaceHolder = new InterfaceHolder();
 	private final ServiceHolder serviceHolder = new ServiceHolder();
+	// file importati direttamente da ogni file caricato
+	private final Map<Path, Set<Path>> imports = new HashMap<>();
+	// picco dello heap durante il caricamento di ogni file, compresi i file che importa
+	private final Map<Path, Long> peakHeap = new LinkedHashMap<>();
 
 	public SymbolManager(Path root) {
+		// i tipi sono condivisi solo all'interno di un caricamento: in batch ogni file riparte da tabelle vuote
+		TypeHolder.reset();
 		this.loadSymbols(root);
 		this.serviceHolder.bindInterfaces(this.interfaceHolder);
 
-		SymbolManager.logger.info("LOADED TYPES:\n{}\n{}", this.typeHolder.toString().trim(), "-".repeat(10));
-		SymbolManager.logger.info("LOADED INTERFACES:\n{}\n{}", this.interfaceHolder.toString().trim(), "-".repeat(10));
-		SymbolManager.logger.info("LOADED SERVICES:\n{}\n{}", this.serviceHolder.toString().trim(), "-".repeat(10));
+		// i dump completi costano quanto il caricamento stesso: si costruiscono solo se richiesti
+		if (SymbolManager.logger.isDebugEnabled()) {
+			SymbolManager.logger.debug("LOADED TYPES:\n{}\n{}", this.typeHolder.toString().trim(), "-".repeat(10));
+			SymbolManager.logger.debug("LOADED INTERFACES:\n{}\n{}", this.interfaceHolder.toString().trim(), "-".repeat(10));
+			SymbolManager.logger.debug("LOADED SERVICES:\n{}\n{}", this.serviceHolder.toString().trim(), "-".repeat(10));
+		}
 	}
 
 	private void loadSymbols(Path source) {
 		this.loadSymbolsRec(source.toUri(), new HashSet<>());
 	}
 
-	private void loadSymbolsRec(URI source, Set<String> visited) {
-		if (visited.contains(source.toString())) return;
+	/**
+	 * Carica i simboli del file e dei suoi import; l'AST del file diventa irraggiungibile al ritorno,
+	 * perché i contenitori conservano solo i riassunti. Restituisce il picco dello heap osservato
+	 * dall'ultimo azzeramento del chiamante, così il chiamante non perde il proprio picco.
+	 */
+	private long loadSymbolsRec(URI source, Set<String> visited) {
+		if (visited.contains(source.toString())) return HeapUsage.peak();
 		visited.add(source.toString());
+		long outer = HeapUsage.peak();
+		HeapUsage.resetPeak();
 
+		Path path = SymbolManager.pathOf(source);
+		Set<Path> imported = this.imports.computeIfAbsent(path, key -> new TreeSet<>());
 		Program program = loadProgram(source);
-		if (program == null) return;
+		if (program == null) return Math.max(outer, HeapUsage.peak());
+		long peak = 0;
 		try {
 			SymbolTable symbolTable = SymbolTableGenerator.generate(program);
-			Arrays.stream(symbolTable.importedSymbolInfos())
-					.forEach(symbol -> {
-						try {
-							this.loadSymbolsRec(
-									new ModuleFinderImpl(
-											Paths.get(source).getParent().toUri(),
-											new String[]{System.getenv("JOLIE_HOME") + "/packages"}
-									).find(source, symbol.importPath()).uri(),
-									visited
-							);
-						} catch (ModuleNotFoundException e) {
-							throw new RuntimeException(e);
-						}
-					});
+			for (ImportedSymbolInfo symbol : symbolTable.importedSymbolInfos()) {
+				URI module = SymbolManager.moduleOf(source, symbol);
+				imported.add(SymbolManager.pathOf(module));
+				peak = Math.max(peak, this.loadSymbolsRec(module, visited));
+			}
 			Arrays.stream(symbolTable.localSymbols())
 					.sorted(Comparator.comparing(symbol -> symbol.node() instanceof ServiceNode ? 1 : 0))
 					.forEach(symbol -> {
@@ -85,10 +94,65 @@ public class SymbolManager {
 		} catch (ModuleException e) {
 			throw new RuntimeException(e);
 		}
+		peak = Math.max(peak, HeapUsage.peak());
+		this.peakHeap.put(path, peak);
+		return Math.max(outer, peak);
+	}
+
+	/**
+	 * Import diretti del file, senza caricarne i simboli né quelli dei moduli importati; il file viene comunque
+	 * letto per intero dal parser e dalla tabella dei simboli di Jolie. Insieme vuoto se il file non si può leggere.
+	 */
+	public static Set<Path> importsOf(Path file) {
+		URI source = file.toUri();
+		Set<Path> imported = new TreeSet<>();
+		Program program = loadProgram(source);
+		if (program == null) return imported;
+		try {
+			for (ImportedSymbolInfo symbol : SymbolTableGenerator.generate(program).importedSymbolInfos())
+				imported.add(SymbolManager.pathOf(SymbolManager.moduleOf(source, symbol)));
+		} catch (ModuleException e) {
+			throw new RuntimeException(e);
+		}
+		return imported;
+	}
+
+	private static URI moduleOf(URI source, ImportedSymbolInfo symbol) {
+		try {
+			return new ModuleFinderImpl(
+					Paths.get(source).getParent().toUri(),
+					new String[]{System.getenv("JOLIE_HOME") + "/packages"}
+			).find(source, symbol.importPath()).uri();
+		} catch (ModuleNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
+	/**
+	 * Picco dello heap, in byte, durante il caricamento di ogni file (compresi i suoi import), in ordine di completamento.
+	 */
+	public Map<Path, Long> getPeakHeap() {
+		return Collections.unmodifiableMap(this.peakHeap);
 	}
 
 	public ServiceHolder getServiceHolder() {
 		return this.serviceHolder;
 	}
+
+	/**
+	 * File da cui dipende {@code source}: il file stesso e i suoi import, transitivamente, in ordine.
+	 */
+	public SortedSet<Path> getDependencies(URI source) {
+		SortedSet<Path> dependencies = new TreeSet<>();
+		Queue<Path> queue = new LinkedList<>(List.of(SymbolManager.pathOf(source)));
+		while (!queue.isEmpty()) {
+			Path file = queue.remove();
+			if (dependencies.add(file)) queue.addAll(this.imports.getOrDefault(file, Set.of()));
+		}
+		return dependencies;
+	}
+
+	private static Path pathOf(URI source) {
+		return Paths.get(source).toAbsolutePath().normalize();
+	}
 }
@@ -14,7 +14,7 @@ public class ReqResOperation extends Operation {
 
 	ReqResOperation(RequestResponseOperationDeclaration operationDeclaration) {
 		super(operationDeclaration);
-		this.responseType = new Type(operationDeclaration.responseType());
+		this.responseType = TypeHolder.getType(operationDeclaration.responseType());
 		this.setFaults(operationDeclaration.faults());
 	}
 
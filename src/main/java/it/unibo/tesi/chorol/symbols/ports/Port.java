@@ -9,28 +9,35 @@ import jolie.lang.parse.ast.expression.*;
 import jolie.lang.parse.ast.expression.InlineTreeExpressionNode.AssignmentOperation;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+/**
+ * Riassunto di una porta: nome, location, protocollo con i suoi parametri, interfacce e operazioni.
+ * Le espressioni della dichiarazione vengono lette nel costruttore e non sono conservate.
+ */
 public class Port<T extends PortInfo> {
 	private final HashMap<String, String> protocolInfo = new HashMap<>();
 	private final InterfaceHolder interfaceHolder = new InterfaceHolder();
 	private final OperationHolder operationHolder = new OperationHolder();
 	private final String name;
-	private String location;
-	private String protocol;
+	private final String location;
+	private final String protocol;
 
 	Port(T portInfo) {
 		this.name = portInfo.id();
-		this.setLocation(portInfo);
-		this.setProtocol(portInfo);
+		this.location = Port.locationOf(portInfo);
+		this.protocol = Port.protocolOf(portInfo);
 		this.setProtocolInfo(portInfo);
 		this.setInterfaces(portInfo.getInterfaceList());
 		this.setOperations(portInfo.operationsMap());
 	}
 
-	public void setLocation(PortInfo portInfo) {
+	private static String locationOf(PortInfo portInfo) {
 		SumExpressionNode location = null;
 		if (portInfo instanceof InputPortInfo)
 			location = (SumExpressionNode) ((InputPortInfo) portInfo).location();
@@ -38,18 +45,18 @@ public class Port<T extends PortInfo> {
 			location = (SumExpressionNode) ((OutputPortInfo) portInfo).location();
 		if (location != null) {
 			ProductExpressionNode pen = (ProductExpressionNode) location.operands().get(0).value();
-			this.location = pen.operands().get(0).value().toString();
+			return pen.operands().get(0).value().toString();
 		} else
-			this.location = "UNKNOWN";
+			return "UNKNOWN";
 	}
 
-	public void setProtocol(PortInfo portInfo) {
+	private static String protocolOf(PortInfo portInfo) {
 		if (portInfo instanceof InputPortInfo)
-			this.protocol = ((InputPortInfo) portInfo).protocolId();
+			return ((InputPortInfo) portInfo).protocolId();
 		else if (portInfo instanceof OutputPortInfo)
-			this.protocol = ((OutputPortInfo) portInfo).protocolId();
+			return ((OutputPortInfo) portInfo).protocolId();
 		else
-			this.protocol = "UNKNOWN";
+			return "UNKNOWN";
 	}
 
 
@@ -76,11 +83,11 @@ public class Port<T extends PortInfo> {
 		}
 	}
 
-	public void setInterfaces(List<InterfaceDefinition> interfaces) {
+	private void setInterfaces(List<InterfaceDefinition> interfaces) {
 		interfaces.forEach(this.interfaceHolder::add);
 	}
 
-	public void setOperations(Map<String, OperationDeclaration> operationsMap) {
+	private void setOperations(Map<String, OperationDeclaration> operationsMap) {
 		operationsMap.forEach(this.operationHolder::add);
 	}
 
@@ -89,6 +96,28 @@ public class Port<T extends PortInfo> {
 		return this.name;
 	}
 
+	public String getLocation() {
+		return this.location;
+	}
+
+	public String getProtocol() {
+		return this.protocol;
+	}
+
+	public Map<String, String> getProtocolInfo() {
+		return Collections.unmodifiableMap(this.protocolInfo);
+	}
+
+	/**
+	 * Operazioni dichiarate direttamente sulla porta o tramite le sue interfacce.
+	 */
+	public Set<String> getOperationNames() {
+		Set<String> names = new TreeSet<>(this.operationHolder.get().keySet());
+		this.interfaceHolder.get().values()
+				.forEach(iface -> names.addAll(iface.getOperationHolder().get().keySet()));
+		return names;
+	}
+
 	InterfaceHolder getInterfaceHolder() {
 		return this.interfaceHolder;
 	}
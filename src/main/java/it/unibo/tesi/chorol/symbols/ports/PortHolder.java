@@ -5,6 +5,7 @@ import it.unibo.tesi.chorol.symbols.interfaces.operations.Operation;
 import it.unibo.tesi.chorol.symbols.services.Service;
 import jolie.lang.parse.ast.PortInfo;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -34,6 +35,10 @@ public class PortHolder<T extends PortInfo> {
 		return this.ports.get(id);
 	}
 
+	public Collection<Port<T>> get() {
+		return this.ports.values();
+	}
+
 	public Operation getOperation(String operationId) {
 		return this.ports.values().stream()
 				       .flatMap(port -> port.getInterfaceHolder().get().entrySet().stream())
@@ -1,7 +1,9 @@
 package it.unibo.tesi.chorol.symbols.services;
 
 import it.unibo.tesi.chorol.symbols.interfaces.InterfaceHolder;
+import it.unibo.tesi.chorol.symbols.ports.EmbedPort;
 import it.unibo.tesi.chorol.symbols.ports.PortHolder;
+import it.unibo.tesi.chorol.utils.Misc;
 import jolie.lang.Constants.ExecutionMode;
 import jolie.lang.parse.ast.*;
 import jolie.lang.parse.util.impl.ProgramInspectorCreatorVisitor;
@@ -9,21 +11,30 @@ import jolie.lang.parse.util.impl.ProgramInspectorImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.stream.Collectors;
 
+/**
+ * Riassunto di un servizio estratto durante il caricamento dei simboli: nome, file sorgente, modalità
+ * di esecuzione e porte. Non tiene riferimenti all'AST, che può essere rilasciato dopo il caricamento;
+ * il ServiceNode viene riletto dal sorgente solo quando il servizio deve essere analizzato.
+ */
 public class Service {
 	private static final Logger logger = LoggerFactory.getLogger(Service.class);
 	private final String name;
+	private final URI source;
 	private final PortHolder<InputPortInfo> inputPortHolder = new PortHolder<>();
 	private final PortHolder<OutputPortInfo> outputPortHolder = new PortHolder<>();
-	private ExecutionMode executionMode;
+	private final ExecutionMode executionMode;
 
 	Service(ServiceNode serviceNode, ServiceHolder serviceHolder) {
 		this.name = serviceNode.name();
+		this.source = serviceNode.context() == null ? null : serviceNode.context().source();
 		ProgramInspectorImpl inspector = (ProgramInspectorImpl) new ProgramInspectorCreatorVisitor(serviceNode.program()).createInspector();
 		Arrays.stream(inspector.getInputPorts()).forEach(this.inputPortHolder::add);
 		Arrays.stream(inspector.getOutputPorts()).forEach(this.outputPortHolder::add);
@@ -35,7 +46,7 @@ public class Service {
 						.collect(Collectors.toList()),
 				serviceHolder
 		);
-		this.loadExecutionMode(serviceNode);
+		this.executionMode = Service.executionModeOf(serviceNode);
 	}
 
 	private void loadEmbeddedServices(List<EmbedServiceNode> nodes, ServiceHolder serviceHolder) {
@@ -44,15 +55,16 @@ public class Service {
 				.forEach(esn -> this.outputPortHolder.add(esn.bindingPort(), serviceHolder.get(esn.serviceName())));
 	}
 
-	private void loadExecutionMode(ServiceNode serviceNode) {
+	private static ExecutionMode executionModeOf(ServiceNode serviceNode) {
+		ExecutionMode executionMode = null;
 		Queue<ServiceNode> q = new LinkedList<>(List.of(serviceNode));
-		while (!q.isEmpty() && this.executionMode == null) {
+		while (!q.isEmpty() && executionMode == null) {
 			Program p = q.remove().program();
-			this.executionMode = p.children().stream()
-					                     .filter(ExecutionInfo.class::isInstance)
-					                     .map(ExecutionInfo.class::cast)
-					                     .map(ExecutionInfo::mode)
-					                     .findFirst().orElse(null);
+			executionMode = p.children().stream()
+					                .filter(ExecutionInfo.class::isInstance)
+					                .map(ExecutionInfo.class::cast)
+					                .map(ExecutionInfo::mode)
+					                .findFirst().orElse(null);
 
 			p.children().stream()
 					.filter(ServiceNode.class::isInstance)
@@ -60,7 +72,7 @@ public class Service {
 					.forEach(q::add);
 
 		}
-		if (this.executionMode == null) this.executionMode = ExecutionMode.SINGLE;
+		return executionMode == null ? ExecutionMode.SINGLE : executionMode;
 	}
 
 	public void bindInterfaces(InterfaceHolder interfaceHolder) {
@@ -76,11 +88,45 @@ public class Service {
 		return this.outputPortHolder;
 	}
 
+	/**
+	 * Servizi incorporati direttamente, attraverso le porte di binding.
+	 */
+	public List<Service> getEmbeddedServices() {
+		return this.outputPortHolder.get().stream()
+				       .filter(EmbedPort.class::isInstance)
+				       .map(port -> ((EmbedPort<?>) port).getService())
+				       .filter(Objects::nonNull)
+				       .distinct()
+				       .collect(Collectors.toList());
+	}
+
 	public ExecutionMode getExecutionMode() {
 		return this.executionMode;
 	}
 
 
+	/**
+	 * ServiceNode riletto dal sorgente, null se il sorgente non è noto o non si può caricare.
+	 * Ogni chiamata produce un AST nuovo, che il chiamante rilascia al termine dell'analisi.
+	 */
+	public ServiceNode getServiceNode() {
+		Program program = this.source == null ? null : Misc.loadProgram(this.source);
+		if (program == null) {
+			Service.logger.warn("Service {}: cannot reload {}", this.name, this.source);
+			return null;
+		}
+		return Arrays.stream(new ProgramInspectorCreatorVisitor(program).createInspector().getServiceNodes())
+				       .filter(serviceNode -> serviceNode.name().equals(this.name))
+				       .findFirst().orElse(null);
+	}
+
+	/**
+	 * File sorgente in cui è definito il servizio, null se non è noto.
+	 */
+	public URI getSource() {
+		return this.source;
+	}
+
 	public String name() {
 		return this.name;
 	}
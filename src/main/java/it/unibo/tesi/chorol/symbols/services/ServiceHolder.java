@@ -3,6 +3,7 @@ package it.unibo.tesi.chorol.symbols.services;
 import it.unibo.tesi.chorol.symbols.interfaces.InterfaceHolder;
 import jolie.lang.parse.ast.ServiceNode;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.stream.Collectors;
 
@@ -17,6 +18,10 @@ public class ServiceHolder {
 		return this.services.get(serviceName);
 	}
 
+	public Collection<Service> get() {
+		return this.services.values();
+	}
+
 	public void bindInterfaces(InterfaceHolder interfaces) {
 		this.services.values().forEach(service -> service.bindInterfaces(interfaces));
 	}
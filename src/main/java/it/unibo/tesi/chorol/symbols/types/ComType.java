@@ -6,14 +6,30 @@ import jolie.lang.parse.ast.types.TypeInlineDefinition;
 import java.util.stream.Collectors;
 
 public class ComType extends Type {
-	private final TypeHolder typeHolder = new TypeHolder();
-
-	ComType(TypeInlineDefinition definition) {
-		super(definition);
-		definition.subTypes().forEach(entry -> {
-			TypeDefinition typeDefinition = entry.getValue();
-			this.typeHolder.add(typeDefinition);
-		});
+	private volatile TypeHolder typeHolder;
+
+	ComType(TypeInlineDefinition definition, int id) {
+		super(definition, id);
+	}
+
+	/**
+	 * I sottotipi vengono materializzati solo al primo uso.
+	 */
+	public TypeHolder subTypes() {
+		TypeHolder holder = this.typeHolder;
+		if (holder == null)
+			synchronized (this) {
+				holder = this.typeHolder;
+				if (holder == null) {
+					TypeHolder created = new TypeHolder();
+					((TypeInlineDefinition) this.definition()).subTypes().forEach(entry -> {
+						TypeDefinition typeDefinition = entry.getValue();
+						created.add(typeDefinition);
+					});
+					this.typeHolder = holder = created;
+				}
+			}
+		return holder;
 	}
 
 	@Override
@@ -21,7 +37,7 @@ public class ComType extends Type {
 		return String.format(
 				"%s\\n%s",
 				super.toString(),
-				this.typeHolder.get().stream()
+				this.subTypes().get().stream()
 						.map(Type::toString)
 						.collect(Collectors.joining("\\n"))
 		);
@@ -10,16 +10,24 @@ import static it.unibo.tesi.chorol.utils.Constants.LINK_TYPE;
 import static it.unibo.tesi.chorol.utils.Misc.rangeToString;
 
 public class Type {
+	private final int id;
+	private final TypeDefinition definition;
 	protected String name;
 	protected String type;
 	protected Range cardinality;
 
-	public Type(TypeDefinition definition) {
+	Type(TypeDefinition definition, int id) {
+		this.id = id;
+		this.definition = definition;
 		setName(definition);
 		setType(definition);
 		setCardinality(definition);
 	}
 
+	static String typeOf(TypeDefinition definition) {
+		return setTypeHelper(definition);
+	}
+
 	private void setName(TypeDefinition definition) {
 		name = definition.name();
 	}
@@ -32,7 +40,7 @@ public class Type {
 		cardinality = definition.cardinality();
 	}
 
-	private String setTypeHelper(TypeDefinition definition) {
+	private static String setTypeHelper(TypeDefinition definition) {
 		if (definition instanceof TypeChoiceDefinition) {
 			TypeChoiceDefinition choice = (TypeChoiceDefinition) definition;
 			return String.format("%s | %s", setTypeHelper(choice.left()), setTypeHelper(choice.right()));
@@ -53,6 +61,28 @@ public class Type {
 		return name;
 	}
 
+	TypeDefinition definition() {
+		return definition;
+	}
+
+	/**
+	 * I tipi sono internati da {@link TypeHolder#getType}: tipi strutturalmente uguali sono lo stesso
+	 * oggetto e hanno lo stesso id, quindi uguaglianza e confronto costano O(1).
+	 */
+	public int id() {
+		return id;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return this == other || other instanceof Type type && this.id == type.id;
+	}
+
+	@Override
+	public int hashCode() {
+		return Integer.hashCode(id);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s ::= %s (%s)", name, type, rangeToString(cardinality));
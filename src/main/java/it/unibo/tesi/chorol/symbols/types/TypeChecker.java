@@ -0,0 +1,124 @@
+package it.unibo.tesi.chorol.symbols.types;
+
+import jolie.lang.NativeType;
+import jolie.lang.parse.ast.types.TypeChoiceDefinition;
+import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.ast.types.TypeDefinitionLink;
+import jolie.lang.parse.ast.types.TypeInlineDefinition;
+import jolie.util.Range;
+
+import java.util.*;
+
+/**
+ * Sottotipaggio strutturale tra tipi Jolie: cardinalità, tipi nativi, sottonodi, scelte e link.
+ * I risultati sono memorizzati per coppia di id internati; i link ricorsivi sono trattati
+ * coinduttivamente: una coppia già in verifica si assume vera, e i risultati che dipendono
+ * da un'assunzione poi smentita vengono scartati.
+ */
+public class TypeChecker {
+	private final Map<Long, Boolean> memo = new HashMap<>();
+	private final Set<Long> assumed = new HashSet<>();
+	// coppie verificate sotto assunzioni ancora aperte
+	private final List<Long> tentative = new ArrayList<>();
+	private final Map<TypeDefinition, Integer> ids = new IdentityHashMap<>();
+
+	/**
+	 * Vero se ogni valore di {@code sub} è accettato da {@code sup}.
+	 */
+	public boolean isSubtype(Type sub, Type sup) {
+		if (sub == sup) return true;
+		return this.check(sub.definition(), sup.definition());
+	}
+
+	public int memoSize() {
+		return this.memo.size();
+	}
+
+	private boolean check(TypeDefinition sub, TypeDefinition sup) {
+		return TypeChecker.includes(sup.cardinality(), sub.cardinality()) && this.content(sub, sup);
+	}
+
+	private static boolean includes(Range outer, Range inner) {
+		return outer.min() <= inner.min() && inner.max() <= outer.max();
+	}
+
+	/**
+	 * Confronto del contenuto (tipo nativo e sottonodi), ignorando la cardinalità della radice.
+	 */
+	private boolean content(TypeDefinition sub, TypeDefinition sup) {
+		long key = ((long) this.idOf(sub) << 32) | (this.idOf(sup) & 0xffffffffL);
+		Boolean known = this.memo.get(key);
+		if (known != null) return known;
+		if (this.assumed.contains(key)) return true;
+
+		this.assumed.add(key);
+		int frame = this.tentative.size();
+		boolean result = this.unfold(sub, sup);
+		this.assumed.remove(key);
+		if (!result) {
+			this.tentative.subList(frame, this.tentative.size()).clear();
+			this.memo.put(key, false);
+		} else {
+			this.tentative.add(key);
+			if (this.assumed.isEmpty()) {
+				this.tentative.forEach(pair -> this.memo.put(pair, true));
+				this.tentative.clear();
+			}
+		}
+		return result;
+	}
+
+	private int idOf(TypeDefinition definition) {
+		return this.ids.computeIfAbsent(definition, d -> TypeHolder.getType(d).id());
+	}
+
+	private boolean unfold(TypeDefinition sub, TypeDefinition sup) {
+		if (sup instanceof TypeDefinitionLink link)
+			return link.linkedType() != null
+					       ? this.content(sub, link.linkedType())
+					       : sub instanceof TypeDefinitionLink other && link.linkedTypeName().equals(other.linkedTypeName());
+		if (sub instanceof TypeDefinitionLink link)
+			return link.linkedType() != null && this.content(link.linkedType(), sup);
+		// ogni alternativa ha la sua cardinalità, che va confrontata come quella della radice
+		if (sub instanceof TypeChoiceDefinition choice)
+			return this.check(choice.left(), sup) && this.check(choice.right(), sup);
+		if (sup instanceof TypeChoiceDefinition choice)
+			return this.check(sub, choice.left()) || this.check(sub, choice.right());
+		if (sub instanceof TypeInlineDefinition inlineSub && sup instanceof TypeInlineDefinition inlineSup)
+			return TypeChecker.conforms(inlineSub.basicType().nativeType(), inlineSup.basicType().nativeType()) &&
+					       this.subNodes(inlineSub, inlineSup);
+		return false;
+	}
+
+	private static boolean conforms(NativeType sub, NativeType sup) {
+		if (sub == sup || sup == NativeType.ANY || sup == NativeType.UNDEFINED) return true;
+		return switch (sub) {
+			case INT -> sup == NativeType.LONG || sup == NativeType.DOUBLE;
+			case LONG -> sup == NativeType.DOUBLE;
+			default -> false;
+		};
+	}
+
+	/**
+	 * I sottonodi richiesti da {@code sup} devono esserci e conformarsi; quelli in più sono ammessi
+	 * solo se {@code sup} è aperto.
+	 */
+	private boolean subNodes(TypeInlineDefinition sub, TypeInlineDefinition sup) {
+		if (sup.basicType().nativeType() == NativeType.UNDEFINED) return true;
+		Map<String, TypeDefinition> subNodes = TypeChecker.subNodesOf(sub);
+		Map<String, TypeDefinition> supNodes = TypeChecker.subNodesOf(sup);
+		for (Map.Entry<String, TypeDefinition> node : supNodes.entrySet()) {
+			TypeDefinition actual = subNodes.get(node.getKey());
+			if (actual == null ? node.getValue().cardinality().min() > 0 : !this.check(actual, node.getValue()))
+				return false;
+		}
+		return sup.untypedSubTypes() || supNodes.keySet().containsAll(subNodes.keySet());
+	}
+
+	private static Map<String, TypeDefinition> subNodesOf(TypeInlineDefinition definition) {
+		Map<String, TypeDefinition> nodes = new HashMap<>();
+		if (definition.hasSubTypes())
+			definition.subTypes().forEach(entry -> nodes.put(entry.getKey(), entry.getValue()));
+		return nodes;
+	}
+}
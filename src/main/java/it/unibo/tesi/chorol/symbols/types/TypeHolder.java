@@ -1,31 +1,66 @@
 package it.unibo.tesi.chorol.symbols.types;
 
+import jolie.lang.parse.ast.types.TypeChoiceDefinition;
 import jolie.lang.parse.ast.types.TypeDefinition;
+import jolie.lang.parse.ast.types.TypeDefinitionLink;
 import jolie.lang.parse.ast.types.TypeInlineDefinition;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class TypeHolder {
+	// hash-consing del caricamento corrente: chiave strutturale → id, id → tipo; i sottotipi compaiono nella chiave
+	// solo con il loro id. Gli id non vengono mai riusati, neanche dopo reset()
+	private static final Map<String, Integer> keys = new ConcurrentHashMap<>();
+	private static final Map<Integer, Type> interned = new ConcurrentHashMap<>();
+	private static final AtomicInteger nextId = new AtomicInteger();
 	private final HashMap<String, Type> types = new HashMap<>();
 
 	public static boolean isComposite(TypeDefinition typeDefinition) {
 		return typeDefinition instanceof TypeInlineDefinition && ((TypeInlineDefinition) typeDefinition).hasSubTypes();
 	}
 
+	/**
+	 * Restituisce il tipo internato: definizioni strutturalmente uguali, anche in operazioni
+	 * o servizi diversi, producono lo stesso oggetto.
+	 */
 	public static Type getType(TypeDefinition typeDefinition) {
-		if (isComposite(typeDefinition))
-			return new ComType((TypeInlineDefinition) typeDefinition);
-		else
-			return new Type(typeDefinition);
+		int id = TypeHolder.keyOf(typeDefinition);
+		return TypeHolder.interned.computeIfAbsent(id, key -> isComposite(typeDefinition)
+				                                                      ? new ComType((TypeInlineDefinition) typeDefinition, key)
+				                                                      : new Type(typeDefinition, key));
+	}
+
+	/**
+	 * Svuota le tabelle, così non trattengono i tipi (e le loro definizioni) dei caricamenti precedenti.
+	 * I tipi già creati restano validi finché qualcuno li usa; un tipo uguale caricato dopo riceve un id nuovo,
+	 * quindi si perde solo la condivisione: id uguali continuano a indicare tipi strutturalmente uguali.
+	 */
+	public static void reset() {
+		TypeHolder.keys.clear();
+		TypeHolder.interned.clear();
+	}
+
+	/**
+	 * Numero di tipi distinti internati dall'ultimo {@link #reset}.
+	 */
+	public static int internedCount() {
+		return TypeHolder.keys.size();
+	}
+
+	private static int keyOf(TypeDefinition typeDefinition) {
+		return Integer.parseInt(new KeyBuilder().key(typeDefinition));
 	}
 
 	public void add(TypeDefinition typeDefinition) {
-		if (isComposite(typeDefinition))
-			types.put(typeDefinition.name(), new ComType((TypeInlineDefinition) typeDefinition));
-		else
-			types.put(typeDefinition.name(), new Type(typeDefinition));
+		this.types.put(typeDefinition.name(), TypeHolder.getType(typeDefinition));
 	}
 
 	public Type get(String typeName) {
@@ -42,4 +77,59 @@ public class TypeHolder {
 				       .map(Type::toString).collect(Collectors.joining("\n"));
 	}
 
+	/**
+	 * Chiave strutturale di una definizione, con i link espansi nel tipo a cui puntano.
+	 * Un tipo ricorsivo, che ricompare tra i propri antenati, è scritto come {@code #n}, la distanza
+	 * dall'antenato. Così due tipi con lo stesso nome ma forma diversa, ad esempio in moduli diversi, hanno chiavi diverse.
+	 * I sottotipi chiusi (senza riferimenti ad antenati) sono calcolati una volta per chiamata.
+	 */
+	private static final class KeyBuilder {
+		private final List<TypeDefinition> stack = new ArrayList<>();
+		private final Map<TypeDefinition, Integer> closed = new IdentityHashMap<>();
+		// posizione più bassa della pila a cui si riferisce il sottotipo in costruzione
+		private int reach = Integer.MAX_VALUE;
+
+		String key(TypeDefinition definition) {
+			for (int i = 0; i < this.stack.size(); i++)
+				if (this.stack.get(i) == definition) {
+					this.reach = Math.min(this.reach, i);
+					return "#" + (this.stack.size() - i);
+				}
+			Integer known = this.closed.get(definition);
+			if (known != null) return String.valueOf(known);
+
+			int outer = this.reach;
+			this.reach = Integer.MAX_VALUE;
+			this.stack.add(definition);
+			String key = this.describe(definition);
+			this.stack.remove(this.stack.size() - 1);
+			int id = TypeHolder.keys.computeIfAbsent(key, k -> TypeHolder.nextId.getAndIncrement());
+			if (this.reach >= this.stack.size()) this.closed.put(definition, id);
+			this.reach = Math.min(outer, this.reach);
+			return String.valueOf(id);
+		}
+
+		private String describe(TypeDefinition definition) {
+			StringBuilder key = new StringBuilder()
+					                    .append(definition.name()).append('|')
+					                    .append(definition.cardinality().min()).append('|')
+					                    .append(definition.cardinality().max()).append('|');
+			if (definition instanceof TypeDefinitionLink link)
+				key.append("LINK|").append(link.linkedType() != null
+						                           ? this.key(link.linkedType())
+						                           : "?" + link.linkedTypeName());
+			else if (definition instanceof TypeChoiceDefinition choice)
+				key.append("CHOICE|").append(this.key(choice.left())).append('|').append(this.key(choice.right()));
+			else {
+				key.append(Type.typeOf(definition));
+				if (definition instanceof TypeInlineDefinition inline && inline.untypedSubTypes()) key.append("|?");
+				if (isComposite(definition))
+					((TypeInlineDefinition) definition).subTypes().stream()
+							.map(entry -> entry.getKey() + "=" + this.key(entry.getValue()))
+							.sorted()
+							.forEach(sub -> key.append('|').append(sub));
+			}
+			return key.toString();
+		}
+	}
 }
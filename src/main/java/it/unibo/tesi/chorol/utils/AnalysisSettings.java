@@ -0,0 +1,123 @@
+package it.unibo.tesi.chorol.utils;
+
+import java.nio.file.Path;
+
+public class AnalysisSettings {
+	private static boolean parallelDeterminization = false;
+	private static boolean compositionalMinimization = false;
+	private static boolean interleaving = false;
+	private static int maxDfaStates = 200_000;
+	private static long maxDfaMemory = 512L * 1024 * 1024;
+	private static int sessions = 0;
+	private static Path cacheDirectory = null;
+	private static long maxCacheSize = 256L * 1024 * 1024;
+	private static Path stateStoreDirectory = null;
+	private static LabelProjection projection = null;
+
+	public static boolean getParallelDeterminization() {
+		return AnalysisSettings.parallelDeterminization;
+	}
+
+	public static void setParallelDeterminization(boolean parallelDeterminization) {
+		AnalysisSettings.parallelDeterminization = parallelDeterminization;
+	}
+
+	public static int getMaxDfaStates() {
+		return AnalysisSettings.maxDfaStates;
+	}
+
+	public static void setMaxDfaStates(int maxDfaStates) {
+		AnalysisSettings.maxDfaStates = maxDfaStates;
+	}
+
+	/**
+	 * Stima, in byte, della memoria occupabile dagli insiemi di stati durante la determinizzazione.
+	 */
+	public static long getMaxDfaMemory() {
+		return AnalysisSettings.maxDfaMemory;
+	}
+
+	public static void setMaxDfaMemory(long maxDfaMemory) {
+		AnalysisSettings.maxDfaMemory = maxDfaMemory;
+	}
+
+	public static boolean getCompositionalMinimization() {
+		return AnalysisSettings.compositionalMinimization;
+	}
+
+	public static void setCompositionalMinimization(boolean compositionalMinimization) {
+		AnalysisSettings.compositionalMinimization = compositionalMinimization;
+	}
+
+	public static boolean getInterleaving() {
+		return AnalysisSettings.interleaving;
+	}
+
+	public static void setInterleaving(boolean interleaving) {
+		AnalysisSettings.interleaving = interleaving;
+	}
+
+	/**
+	 * Sessioni concorrenti modellate con l'astrazione a contatori: 0 per il ciclo su main,
+	 * un valore negativo per un numero non limitato di sessioni.
+	 */
+	public static int getSessions() {
+		return AnalysisSettings.sessions;
+	}
+
+	public static void setSessions(int sessions) {
+		AnalysisSettings.sessions = sessions;
+	}
+
+	/**
+	 * Cartella della cache persistente degli automi, null se disattivata.
+	 */
+	public static Path getCacheDirectory() {
+		return AnalysisSettings.cacheDirectory;
+	}
+
+	public static void setCacheDirectory(Path cacheDirectory) {
+		AnalysisSettings.cacheDirectory = cacheDirectory;
+	}
+
+	public static long getMaxCacheSize() {
+		return AnalysisSettings.maxCacheSize;
+	}
+
+	public static void setMaxCacheSize(long maxCacheSize) {
+		AnalysisSettings.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Cartella dei file mappati in memoria per gli stati delle esplorazioni, null per tenerli sullo heap.
+	 */
+	public static Path getStateStoreDirectory() {
+		return AnalysisSettings.stateStoreDirectory;
+	}
+
+	public static void setStateStoreDirectory(Path stateStoreDirectory) {
+		AnalysisSettings.stateStoreDirectory = stateStoreDirectory;
+	}
+
+	/**
+	 * Etichette da tenere nel grafo minimizzato, null per tenerle tutte.
+	 */
+	public static LabelProjection getProjection() {
+		return AnalysisSettings.projection;
+	}
+
+	public static void setProjection(LabelProjection projection) {
+		AnalysisSettings.projection = projection;
+	}
+
+	/**
+	 * Impostazioni che cambiano il grafo prodotto, per distinguere i risultati salvati in cache;
+	 * la determinizzazione parallela e la minimizzazione composizionale non cambiano il risultato
+	 * (stessi stati finali e stesso budget, vedi {@link DeterminizationBudget}).
+	 */
+	public static String fingerprint() {
+		return String.format("I%b;S%d;B%d;M%d;T%b;P%s", AnalysisSettings.interleaving, AnalysisSettings.sessions,
+				AnalysisSettings.maxDfaStates, AnalysisSettings.maxDfaMemory, OutputSettings.getFullType(),
+				AnalysisSettings.projection);
+	}
+}
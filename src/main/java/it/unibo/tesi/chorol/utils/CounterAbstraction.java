@@ -0,0 +1,170 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.*;
+
+/**
+ * Astrazione a contatori di più istanze dello stesso automa (sessioni concorrenti o istanze di uno spawn).
+ * Uno stato è il vettore che conta quante istanze si trovano in ogni stato locale, non la tupla degli
+ * stati delle singole istanze: le istanze sono indistinguibili, quindi gli stati crescono con il numero
+ * di stati locali e non esponenzialmente con il numero di istanze.
+ * Ogni contatore è esatto sotto la soglia e vale ω ("almeno la soglia") da lì in poi; togliere
+ * un'istanza da ω porta sia in ω sia alla soglia meno uno, così il grafo copre ogni numero di istanze.
+ */
+final class CounterAbstraction {
+	// soglia dei contatori quando il numero di istanze non è limitato
+	static final int CUTOFF = 3;
+	// oltre questo numero di istanze uno spawn usa comunque ω
+	private static final int MAX_EXACT = 16;
+	// stati del grafo che precedono i vettori: l'ingresso e l'uscita
+	private static final int FIRST = 2;
+
+	private final CompactGraph session;
+	// valore di ω: i contatori vanno da 0 a omega - 1 in modo esatto
+	private final int omega;
+	// istanze attive insieme al più, -1 se non limitate
+	private final int bound;
+	// sessioni: le istanze partono e terminano una alla volta; spawn: partono tutte insieme
+	private final boolean arrivals;
+	// stati locali in cui un'istanza ha terminato
+	private final boolean[] done;
+
+	private CounterAbstraction(FlowGraph session, int omega, int bound, boolean arrivals) {
+		this.session = CompactGraph.of(session);
+		this.omega = omega;
+		this.bound = bound;
+		this.arrivals = arrivals;
+		this.done = new boolean[this.session.size()];
+		for (int s = 0; s < this.session.size(); s++)
+			this.done[s] = s == this.session.end() || this.session.type(s) == StateType.END;
+	}
+
+	/**
+	 * Sessioni concorrenti: nuove sessioni possono partire finché ce ne sono meno di {@code bound} attive
+	 * (senza limite se negativo); lancia {@link DeterminizationBudgetException} se il grafo supera il budget.
+	 */
+	static FlowGraph sessions(FlowGraph session, int bound) {
+		CounterAbstraction counters = new CounterAbstraction(session, bound > 0 ? bound + 1 : CounterAbstraction.CUTOFF,
+				bound > 0 ? bound : -1, true);
+		return counters.run(List.of(new int[counters.session.size()])).toFlowGraph();
+	}
+
+	/**
+	 * Istanze di uno spawn, tutte attive dall'inizio; il grafo termina quando tutte hanno terminato.
+	 * Se {@code instances} è negativo il numero non è noto e si parte da ogni valore possibile.
+	 */
+	static FlowGraph spawn(FlowGraph body, int instances) {
+		boolean exact = instances >= 0 && instances <= CounterAbstraction.MAX_EXACT;
+		CounterAbstraction counters = new CounterAbstraction(body, exact ? instances + 1 : CounterAbstraction.CUTOFF,
+				-1, false);
+		int from = exact ? instances : instances < 0 ? 0 : counters.omega;
+		int to = exact ? instances : counters.omega;
+		List<int[]> initial = new ArrayList<>();
+		for (int count = from; count <= to; count++) {
+			int[] vector = new int[counters.session.size()];
+			vector[counters.session.start()] = count;
+			initial.add(vector);
+		}
+		return counters.run(initial).toFlowGraph();
+	}
+
+	private CompactGraph run(List<int[]> initial) {
+		int n = this.session.size();
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		int root = builder.addState(StateType.NORMAL);
+		int end = builder.addState(StateType.NORMAL);
+
+		try (StateStore states = StateStore.create(n)) {
+			DeterminizationBudget budget = new DeterminizationBudget(states.bytesPerElement());
+			for (int[] vector : initial)
+				builder.addEdge(root, null, this.stateOf(vector, states, builder, budget));
+
+			// gli stati ancora da espandere sono quelli con indice maggiore di quello corrente
+			for (int index = 0; index < states.size(); index++) {
+				int[] current = states.get(index);
+				int source = index + CounterAbstraction.FIRST;
+				if (this.typeOf(current) == StateType.EXIT) continue;
+				int edges = builder.edgeCount();
+				if (this.finished(current)) builder.addEdge(source, null, end);
+
+				for (int s = 0; s < n; s++) {
+					if (current[s] == 0) continue;
+					for (int e = this.session.firstEdge(s); e < this.session.lastEdge(s); e++) {
+						String label = this.session.symbol(this.session.label(e));
+						for (int[] moved : this.decrement(current, s)) {
+							int[] next = this.increment(moved, this.session.target(e));
+							builder.addEdge(source, label, this.stateOf(next, states, builder, budget));
+						}
+					}
+					if (this.arrivals && this.done[s])
+						for (int[] next : this.decrement(current, s))
+							builder.addEdge(source, null, this.stateOf(next, states, builder, budget));
+				}
+				if (this.arrivals && (this.bound < 0 || Arrays.stream(current).sum() < this.bound))
+					builder.addEdge(source, null,
+							this.stateOf(this.increment(current, this.session.start()), states, builder, budget));
+				budget.chargeEdges(builder.edgeCount() - edges);
+			}
+		}
+
+		builder.setStart(root);
+		builder.setEnd(end);
+		return builder.build();
+	}
+
+	/**
+	 * Stato del grafo per il vettore, creato se il vettore non era ancora stato raggiunto.
+	 */
+	private int stateOf(int[] vector, StateStore states, CompactGraph.Builder builder, DeterminizationBudget budget) {
+		int size = states.size();
+		int index = states.put(vector);
+		if (index == size) {
+			budget.charge(vector.length);
+			builder.addState(this.typeOf(vector));
+		}
+		return index + CounterAbstraction.FIRST;
+	}
+
+	private int[] increment(int[] vector, int state) {
+		int[] next = vector.clone();
+		next[state] = Math.min(next[state] + 1, this.omega);
+		return next;
+	}
+
+	/**
+	 * Vettori ottenuti togliendo un'istanza dallo stato locale: da ω si resta in ω o si scende sotto la soglia.
+	 */
+	private List<int[]> decrement(int[] vector, int state) {
+		int[] next = vector.clone();
+		next[state]--;
+		if (vector[state] < this.omega) return List.of(next);
+		int[] saturated = vector.clone();
+		return List.of(saturated, next);
+	}
+
+	private boolean finished(int[] vector) {
+		for (int s = 0; s < vector.length; s++)
+			if (vector[s] > 0 && !this.done[s]) return false;
+		return true;
+	}
+
+	/**
+	 * EXIT e FAULT si propagano appena un'istanza li raggiunge; END quando tutte le istanze hanno terminato.
+	 */
+	private StateType typeOf(int[] vector) {
+		boolean fault = false, end = false, exit = false;
+		for (int s = 0; s < vector.length; s++) {
+			if (vector[s] == 0) continue;
+			StateType type = this.session.type(s);
+			fault |= type == StateType.FAULT;
+			end |= type == StateType.END;
+			exit |= type == StateType.EXIT;
+		}
+		if (exit) return StateType.EXIT;
+		if (end && this.finished(vector)) return StateType.END;
+		return fault ? StateType.FAULT : StateType.NORMAL;
+	}
+}
@@ -0,0 +1,52 @@
+package it.unibo.tesi.chorol.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contabilità di stati e memoria stimata di una subset construction; thread-safe.
+ */
+final class DeterminizationBudget {
+	// costo stimato di un elemento di un insieme di stati, uguale per le due subset construction:
+	// con budget di memoria uguali i due percorsi ripiegano sull'NFA per gli stessi servizi
+	static final long SUBSET_ELEMENT = 48;
+	private static final long STATE_OVERHEAD = 96;
+	// sorgente, destinazione e riferimento all'etichetta di un arco nel CompactGraph.Builder
+	private static final long EDGE = 16;
+	private final int maxStates = AnalysisSettings.getMaxDfaStates();
+	private final long maxMemory = AnalysisSettings.getMaxDfaMemory();
+	private final long bytesPerElement;
+	private final AtomicInteger states = new AtomicInteger();
+	private final AtomicLong memory = new AtomicLong();
+
+	/**
+	 * @param bytesPerElement costo stimato di un elemento di un insieme di stati nella struttura usata
+	 */
+	DeterminizationBudget(long bytesPerElement) {
+		this.bytesPerElement = bytesPerElement;
+	}
+
+	/**
+	 * Registra un nuovo stato del DFA corrispondente a un insieme di {@code subsetSize} stati dell'NFA.
+	 */
+	void charge(int subsetSize) {
+		int n = this.states.incrementAndGet();
+		long bytes = this.memory.addAndGet(DeterminizationBudget.STATE_OVERHEAD + this.bytesPerElement * subsetSize);
+		if (n > this.maxStates)
+			throw new DeterminizationBudgetException(String.format("DFA state budget exceeded (%d states)", this.maxStates));
+		this.checkMemory(bytes);
+	}
+
+	/**
+	 * Registra {@code count} archi del grafo in costruzione: restano sullo heap anche quando gli stati
+	 * dell'esplorazione sono fuori dallo heap (vedi {@link MappedStateStore}).
+	 */
+	void chargeEdges(int count) {
+		this.checkMemory(this.memory.addAndGet(DeterminizationBudget.EDGE * count));
+	}
+
+	private void checkMemory(long bytes) {
+		if (bytes > this.maxMemory)
+			throw new DeterminizationBudgetException(String.format("DFA memory budget exceeded (%d MB)", this.maxMemory >> 20));
+	}
+}
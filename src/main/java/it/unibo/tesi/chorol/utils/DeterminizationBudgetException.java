@@ -0,0 +1,10 @@
+package it.unibo.tesi.chorol.utils;
+
+/**
+ * Lanciata quando la subset construction supera il budget di stati o di memoria.
+ */
+public class DeterminizationBudgetException extends RuntimeException {
+	DeterminizationBudgetException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,561 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.AutomatonCache;
+import it.unibo.tesi.chorol.visitor.flow.FlowController;
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.State;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Verifica differenziale dei percorsi ottimizzati rispetto a quello di riferimento ({@link GraphUtils#reference}),
+ * su FlowGraph e programmi Jolie casuali generati da un seme. Due risultati devono riconoscere lo stesso
+ * linguaggio, e l'automa ottimizzato non può avere più stati vivi (raggiungibili e da cui si raggiunge la fine)
+ * di quello di riferimento; le due determinizzazioni devono produrre lo stesso numero di stati.
+ * Un caso che fallisce viene ridotto togliendo archi, stati o sottoprocessi finché continua a fallire.
+ * I grafi in cui nessun sottoinsieme della subset construction contiene la fine vengono scartati: per convenzione
+ * il DFA prende come finale lo stato iniziale, che non corrisponde al linguaggio vuoto; lo stesso vale
+ * per i casi in cui il confronto dei linguaggi supera {@link #MAX_PAIRS} coppie di insiemi.
+ */
+public final class DifferentialCheck {
+	private static final String[] LABELS = {"a", "b", "c"};
+	private static final int MAX_STATES = 8;
+	private static final int MAX_PAIRS = 200_000;
+
+	private final Random random;
+	private final List<Failure> failures = new ArrayList<>();
+	private int checked;
+	private int skipped;
+
+	public DifferentialCheck(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public List<Failure> getFailures() {
+		return this.failures;
+	}
+
+	public int getChecked() {
+		return this.checked;
+	}
+
+	public int getSkipped() {
+		return this.skipped;
+	}
+
+	/**
+	 * Confronta i percorsi su {@code cases} grafi casuali.
+	 */
+	public void graphs(int cases) {
+		boolean parallel = AnalysisSettings.getParallelDeterminization();
+		LabelProjection projection = AnalysisSettings.getProjection();
+		AnalysisSettings.setProjection(null);
+		try {
+			for (int i = 0; i < cases; i++) {
+				GraphCase graphCase = this.randomGraph();
+				if (DifferentialCheck.finalSubsets(CompactGraph.of(graphCase.toFlowGraph())) == 0) {
+					this.skipped++;
+					continue;
+				}
+				Comparison comparison = DifferentialCheck.compareGraph(graphCase);
+				if (comparison.outcome() == Outcome.UNDECIDED) {
+					this.skipped++;
+					continue;
+				}
+				this.checked++;
+				if (comparison.outcome() == Outcome.EQUAL) continue;
+				GraphCase shrunk = DifferentialCheck.shrink(graphCase, GraphCase::smaller,
+						candidate -> DifferentialCheck.finalSubsets(CompactGraph.of(candidate.toFlowGraph())) > 0 &&
+								             DifferentialCheck.compareGraph(candidate).outcome() == Outcome.DIFFERENT);
+				this.failures.add(new Failure("graph", DifferentialCheck.compareGraph(shrunk).reason(), shrunk.toString()));
+			}
+		} finally {
+			AnalysisSettings.setParallelDeterminization(parallel);
+			AnalysisSettings.setProjection(projection);
+		}
+	}
+
+	/**
+	 * Confronta l'analisi di {@code cases} programmi Jolie casuali, scritti in {@code directory}, con e senza
+	 * minimizzazione composizionale e determinizzazione parallela. La cache su disco resta spenta: la sua chiave
+	 * non distingue i due percorsi, quindi il secondo leggerebbe l'automa del primo. Il file viene cancellato alla fine.
+	 */
+	public void programs(int cases, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Path file = directory.resolve("Random.ol");
+		boolean parallel = AnalysisSettings.getParallelDeterminization();
+		boolean compositional = AnalysisSettings.getCompositionalMinimization();
+		Path cacheDirectory = AnalysisSettings.getCacheDirectory();
+		AnalysisSettings.setCacheDirectory(null);
+		try {
+			for (int i = 0; i < cases; i++) {
+				Process process = this.randomProcess(3);
+				Comparison comparison = DifferentialCheck.compareProgram(process, file);
+				if (comparison.outcome() == Outcome.UNDECIDED) {
+					this.skipped++;
+					continue;
+				}
+				this.checked++;
+				if (comparison.outcome() == Outcome.EQUAL) continue;
+				Process shrunk = DifferentialCheck.shrink(process, Process::smaller,
+						candidate -> DifferentialCheck.compareProgram(candidate, file).outcome() == Outcome.DIFFERENT);
+				this.failures.add(new Failure("program", DifferentialCheck.compareProgram(shrunk, file).reason(),
+						DifferentialCheck.program(shrunk)));
+			}
+		} finally {
+			AnalysisSettings.setParallelDeterminization(parallel);
+			AnalysisSettings.setCompositionalMinimization(compositional);
+			AnalysisSettings.setCacheDirectory(cacheDirectory);
+			AutomatonCache.clear();
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Confronto dei percorsi sul grafo; se differiscono il motivo cita la parola su cui non concordano.
+	 */
+	private static Comparison compareGraph(GraphCase graphCase) {
+		Subsets input = Subsets.of(CompactGraph.of(graphCase.toFlowGraph()));
+		CompactGraph reference = CompactGraph.of(GraphUtils.reference(graphCase.toFlowGraph()));
+		Comparison witness = DifferentialCheck.counterexample(input, Subsets.ofDeterminized(reference));
+		if (witness.outcome() == Outcome.UNDECIDED) return witness;
+		if (witness.outcome() == Outcome.DIFFERENT)
+			return Comparison.different("removeEpsilonTransitions/convertToDFA/minimizeDFA differ from the input on " + witness.reason());
+
+		Map<String, CompactGraph> optimized = new LinkedHashMap<>();
+		for (boolean parallel : new boolean[]{false, true}) {
+			AnalysisSettings.setParallelDeterminization(parallel);
+			FlowGraph flowGraph = graphCase.toFlowGraph();
+			try {
+				GraphUtils.clearGraph(flowGraph, "check");
+			} catch (RuntimeException e) {
+				return Comparison.different("clearGraph" + (parallel ? " (parallel)" : "") + " failed: " + e);
+			}
+			optimized.put(parallel ? "clearGraph (parallel)" : "clearGraph", CompactGraph.of(flowGraph));
+		}
+		for (Map.Entry<String, CompactGraph> entry : optimized.entrySet()) {
+			witness = DifferentialCheck.counterexample(Subsets.ofDeterminized(reference), Subsets.ofDeterminized(entry.getValue()));
+			if (witness.outcome() == Outcome.UNDECIDED) return witness;
+			if (witness.outcome() == Outcome.DIFFERENT)
+				return Comparison.different(entry.getKey() + " differs from the reference on " + witness.reason());
+			int expected = DifferentialCheck.liveStates(reference), actual = DifferentialCheck.liveStates(entry.getValue());
+			if (actual > expected)
+				return Comparison.different(String.format("%s has %d live states, the reference %d", entry.getKey(), actual, expected));
+		}
+		int sequential = optimized.get("clearGraph").size(), parallel = optimized.get("clearGraph (parallel)").size();
+		if (sequential != parallel)
+			return Comparison.different(String.format("sequential and parallel determinization give %d and %d states", sequential, parallel));
+		return Comparison.EQUAL;
+	}
+
+	private static Comparison compareProgram(Process process, Path file) {
+		try {
+			Files.writeString(file, DifferentialCheck.program(process));
+		} catch (IOException e) {
+			return Comparison.different("cannot write " + file + ": " + e.getMessage());
+		}
+		CompactGraph reference, optimized;
+		try {
+			reference = DifferentialCheck.analyze(file, false);
+			optimized = DifferentialCheck.analyze(file, true);
+		} catch (RuntimeException e) {
+			return Comparison.different("analysis failed: " + e);
+		}
+		if (reference == null || optimized == null) return Comparison.different("the program was not loaded");
+		Comparison witness = DifferentialCheck.counterexample(Subsets.ofDeterminized(reference), Subsets.ofDeterminized(optimized));
+		if (witness.outcome() == Outcome.UNDECIDED) return witness;
+		if (witness.outcome() == Outcome.DIFFERENT)
+			return Comparison.different("compositional/parallel analysis differs on " + witness.reason());
+		int expected = DifferentialCheck.liveStates(reference), actual = DifferentialCheck.liveStates(optimized);
+		if (actual > expected)
+			return Comparison.different(String.format("compositional/parallel analysis has %d live states, the reference %d", actual, expected));
+		return Comparison.EQUAL;
+	}
+
+	private static CompactGraph analyze(Path file, boolean optimized) {
+		AnalysisSettings.setParallelDeterminization(optimized);
+		AnalysisSettings.setCompositionalMinimization(optimized);
+		AutomatonCache.clear();
+		FlowGraph flowGraph = FlowController.analyzeFile(file);
+		return flowGraph == null ? null : CompactGraph.of(flowGraph);
+	}
+
+	/**
+	 * Riduzione golosa: si passa al primo candidato più piccolo che fallisce ancora, finché ce n'è uno.
+	 */
+	static <T> T shrink(T failing, Function<T, List<T>> smaller, Predicate<T> fails) {
+		T current = failing;
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (T candidate : smaller.apply(current))
+				if (fails.test(candidate)) {
+					current = candidate;
+					progress = true;
+					break;
+				}
+		}
+		return current;
+	}
+
+	/**
+	 * Insiemi di stati raggiunti leggendo le parole, con le chiusure epsilon prese prima di ogni etichetta
+	 * come in {@code removeEpsilonTransitions}: una parola è accettata se l'insieme contiene la fine.
+	 * In un grafo determinizzato accetta anche uno stato con una epsilon verso la fine (vedi {@code GraphUtils.joinFinalStates}).
+	 */
+	static final class Subsets {
+		private final CompactGraph graph;
+		private final BitSet[] closures;
+		private final BitSet accepting = new BitSet();
+
+		private Subsets(CompactGraph graph, boolean determinized) {
+			this.graph = graph;
+			if (graph.size() > 0) this.accepting.set(graph.end());
+			this.closures = new BitSet[graph.size()];
+			for (int s = 0; s < graph.size(); s++) {
+				BitSet closure = new BitSet();
+				Deque<Integer> stack = new ArrayDeque<>(List.of(s));
+				closure.set(s);
+				while (!stack.isEmpty()) {
+					int t = stack.pop();
+					for (int e = graph.firstEdge(t); e < graph.lastEdge(t); e++)
+						if (graph.label(e) == CompactGraph.EPSILON && !closure.get(graph.target(e))) {
+							closure.set(graph.target(e));
+							stack.push(graph.target(e));
+						}
+				}
+				this.closures[s] = closure;
+				if (determinized)
+					for (int e = graph.firstEdge(s); e < graph.lastEdge(s); e++)
+						if (graph.label(e) == CompactGraph.EPSILON && graph.target(e) == graph.end()) this.accepting.set(s);
+			}
+		}
+
+		static Subsets of(CompactGraph graph) {
+			return new Subsets(graph, false);
+		}
+
+		static Subsets ofDeterminized(CompactGraph graph) {
+			return new Subsets(graph, true);
+		}
+
+		CompactGraph graph() {
+			return this.graph;
+		}
+
+		BitSet start() {
+			BitSet start = new BitSet();
+			if (this.graph.size() > 0) start.set(this.graph.start());
+			return start;
+		}
+
+		boolean accepts(BitSet subset) {
+			return subset.intersects(this.accepting);
+		}
+
+		BitSet step(BitSet subset, String symbol) {
+			BitSet next = new BitSet();
+			int label = this.graph.labelId(symbol);
+			if (label < 0) return next;
+			for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1))
+				for (int t = this.closures[s].nextSetBit(0); t >= 0; t = this.closures[s].nextSetBit(t + 1))
+					for (int e = this.graph.firstEdge(t); e < this.graph.lastEdge(t); e++)
+						if (this.graph.label(e) == label) next.set(this.graph.target(e));
+			return next;
+		}
+	}
+
+	/**
+	 * Parola più corta accettata da uno solo dei due grafi come motivo della differenza;
+	 * non deciso se il confronto supera {@link #MAX_PAIRS} coppie di insiemi.
+	 */
+	static Comparison counterexample(Subsets left, Subsets right) {
+		SortedSet<String> alphabet = new TreeSet<>();
+		for (Subsets subsets : List.of(left, right))
+			for (int l = 0; l < subsets.graph().alphabetSize(); l++) alphabet.add(subsets.graph().symbol(l));
+
+		Map<List<BitSet>, List<String>> words = new HashMap<>();
+		Deque<List<BitSet>> queue = new ArrayDeque<>();
+		List<BitSet> start = List.of(left.start(), right.start());
+		words.put(start, List.of());
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			if (words.size() >= DifferentialCheck.MAX_PAIRS) return Comparison.UNDECIDED;
+			List<BitSet> pair = queue.poll();
+			if (left.accepts(pair.get(0)) != right.accepts(pair.get(1)))
+				return Comparison.different("[" + String.join(", ", words.get(pair)) + "]");
+			for (String symbol : alphabet) {
+				List<BitSet> next = List.of(left.step(pair.get(0), symbol), right.step(pair.get(1), symbol));
+				if (next.get(0).isEmpty() && next.get(1).isEmpty() || words.containsKey(next)) continue;
+				List<String> word = new ArrayList<>(words.get(pair));
+				word.add(symbol);
+				words.put(next, word);
+				queue.add(next);
+			}
+		}
+		return Comparison.EQUAL;
+	}
+
+	/**
+	 * Numero di insiemi raggiungibili che contengono la fine.
+	 */
+	static int finalSubsets(CompactGraph graph) {
+		Subsets subsets = Subsets.of(graph);
+		Set<BitSet> seen = new HashSet<>(List.of(subsets.start()));
+		Deque<BitSet> queue = new ArrayDeque<>(seen);
+		int count = 0;
+		while (!queue.isEmpty()) {
+			BitSet subset = queue.poll();
+			if (subsets.accepts(subset)) count++;
+			for (int l = 0; l < graph.alphabetSize(); l++) {
+				BitSet next = subsets.step(subset, graph.symbol(l));
+				if (!next.isEmpty() && seen.add(next)) queue.add(next);
+			}
+		}
+		return count;
+	}
+
+	static int liveStates(CompactGraph graph) {
+		int n = graph.size();
+		if (n == 0) return 0;
+		BitSet forward = new BitSet(n), backward = new BitSet(n);
+		Deque<Integer> stack = new ArrayDeque<>(List.of(graph.start()));
+		forward.set(graph.start());
+		List<List<Integer>> predecessors = new ArrayList<>();
+		for (int s = 0; s < n; s++) predecessors.add(new ArrayList<>());
+		for (int s = 0; s < n; s++)
+			for (int e = graph.firstEdge(s); e < graph.lastEdge(s); e++) predecessors.get(graph.target(e)).add(s);
+		while (!stack.isEmpty()) {
+			int s = stack.pop();
+			for (int e = graph.firstEdge(s); e < graph.lastEdge(s); e++)
+				if (!forward.get(graph.target(e))) {
+					forward.set(graph.target(e));
+					stack.push(graph.target(e));
+				}
+		}
+		stack.push(graph.end());
+		backward.set(graph.end());
+		while (!stack.isEmpty())
+			for (int p : predecessors.get(stack.pop()))
+				if (!backward.get(p)) {
+					backward.set(p);
+					stack.push(p);
+				}
+		forward.and(backward);
+		return forward.cardinality();
+	}
+
+	private GraphCase randomGraph() {
+		int n = 1 + this.random.nextInt(DifferentialCheck.MAX_STATES);
+		StateType[] types = new StateType[n];
+		for (int s = 0; s < n; s++)
+			types[s] = this.random.nextInt(10) == 0 ? StateType.FAULT : StateType.NORMAL;
+		int end = this.random.nextInt(n);
+		List<Edge> edges = new ArrayList<>();
+		int m = this.random.nextInt(2 * n + 1);
+		for (int i = 0; i < m; i++) {
+			int from = this.random.nextInt(n);
+			String label = this.random.nextInt(5) == 0 ? null : DifferentialCheck.LABELS[this.random.nextInt(DifferentialCheck.LABELS.length)];
+			edges.add(new Edge(from, label, this.random.nextInt(n)));
+		}
+		return new GraphCase(types, 0, end, edges);
+	}
+
+	private Process randomProcess(int depth) {
+		int choice = depth == 0 ? this.random.nextInt(3) : this.random.nextInt(9);
+		String op = DifferentialCheck.LABELS[this.random.nextInt(DifferentialCheck.LABELS.length)];
+		return switch (choice) {
+			case 0 -> new Process(Kind.OUTPUT, this.random.nextBoolean() ? op : "r", List.of());
+			case 1 -> new Process(Kind.INPUT, op, List.of());
+			case 2 -> new Process(Kind.NIL, null, List.of());
+			case 3 -> new Process(Kind.INPUT, "r", List.of(this.randomProcess(depth - 1)));
+			case 4, 5 -> new Process(Kind.SEQUENCE, null, this.randomProcesses(depth - 1, 2 + this.random.nextInt(2)));
+			case 6 -> {
+				List<Process> branches = new ArrayList<>();
+				for (String branch : DifferentialCheck.LABELS)
+					if (this.random.nextBoolean())
+						branches.add(new Process(Kind.BRANCH, branch, List.of(this.randomProcess(depth - 1))));
+				if (branches.isEmpty()) branches.add(new Process(Kind.BRANCH, op, List.of(this.randomProcess(depth - 1))));
+				yield new Process(Kind.CHOICE, null, branches);
+			}
+			case 7 -> new Process(Kind.IF, null, this.randomProcesses(depth - 1, 2));
+			default -> new Process(this.random.nextBoolean() ? Kind.WHILE : Kind.PARALLEL, null,
+					this.randomProcesses(depth - 1, 1 + this.random.nextInt(2)));
+		};
+	}
+
+	private List<Process> randomProcesses(int depth, int count) {
+		List<Process> processes = new ArrayList<>();
+		for (int i = 0; i < count; i++) processes.add(this.randomProcess(depth));
+		return processes;
+	}
+
+	private static String program(Process main) {
+		return """
+				interface Api {
+				OneWay: a( string ), b( string ), c( string )
+				RequestResponse: r( string )( string )
+				}
+
+				service Random {
+				execution: single
+				outputPort Other {
+				location: "socket://localhost:9000"
+				protocol: sodep
+				interfaces: Api
+				}
+				inputPort In {
+				location: "socket://localhost:8000"
+				protocol: sodep
+				interfaces: Api
+				}
+				main {
+				%s
+				}
+				}
+				""".formatted(main);
+	}
+
+	/**
+	 * Differenza trovata: il percorso, il motivo e il caso ridotto (grafo o programma).
+	 */
+	public record Failure(String kind, String reason, String witness) {
+		@Override
+		public String toString() {
+			return String.format("%s: %s%n%s", this.kind, this.reason, this.witness);
+		}
+	}
+
+	enum Outcome {EQUAL, DIFFERENT, UNDECIDED}
+
+	/**
+	 * Esito di un confronto, con il motivo se i percorsi differiscono.
+	 */
+	record Comparison(Outcome outcome, String reason) {
+		static final Comparison EQUAL = new Comparison(Outcome.EQUAL, null);
+		static final Comparison UNDECIDED = new Comparison(Outcome.UNDECIDED, null);
+
+		static Comparison different(String reason) {
+			return new Comparison(Outcome.DIFFERENT, reason);
+		}
+	}
+
+	private record Edge(int from, String label, int to) {
+		@Override
+		public String toString() {
+			return String.format("%d -%s-> %d", this.from, this.label == null ? "epsilon" : this.label, this.to);
+		}
+	}
+
+	private record GraphCase(StateType[] types, int start, int end, List<Edge> edges) {
+
+		FlowGraph toFlowGraph() {
+			FlowGraph flowGraph = new FlowGraph();
+			State[] states = new State[this.types.length];
+			for (int s = 0; s < states.length; s++) {
+				states[s] = State.createState();
+				states[s].setStateType(this.types[s]);
+				flowGraph.addVertex(states[s]);
+			}
+			for (Edge edge : this.edges)
+				flowGraph.addEdge(states[edge.from()], states[edge.to()], edge.label());
+			flowGraph.setStartNode(states[this.start]);
+			flowGraph.setEndNode(states[this.end]);
+			return flowGraph;
+		}
+
+		/**
+		 * Casi con un arco in meno, oppure senza uno stato isolato che non è né iniziale né finale.
+		 */
+		List<GraphCase> smaller() {
+			List<GraphCase> smaller = new ArrayList<>();
+			for (int i = 0; i < this.edges.size(); i++) {
+				List<Edge> edges = new ArrayList<>(this.edges);
+				edges.remove(i);
+				smaller.add(new GraphCase(this.types, this.start, this.end, edges));
+			}
+			for (int s = this.types.length - 1; s >= 0; s--) {
+				int removed = s;
+				if (s == this.start || s == this.end ||
+						    this.edges.stream().anyMatch(edge -> edge.from() == removed || edge.to() == removed))
+					continue;
+				StateType[] types = new StateType[this.types.length - 1];
+				for (int t = 0, i = 0; t < this.types.length; t++) if (t != s) types[i++] = this.types[t];
+				List<Edge> edges = this.edges.stream()
+						                   .map(edge -> new Edge(edge.from() > removed ? edge.from() - 1 : edge.from(), edge.label(),
+								                   edge.to() > removed ? edge.to() - 1 : edge.to()))
+						                   .collect(Collectors.toList());
+				smaller.add(new GraphCase(types, this.start > s ? this.start - 1 : this.start,
+						this.end > s ? this.end - 1 : this.end, edges));
+			}
+			return smaller;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("states %d, start %d, end %d: %s", this.types.length, this.start, this.end,
+					this.edges.stream().map(Edge::toString).collect(Collectors.joining("; ")));
+		}
+	}
+
+	private enum Kind {NIL, OUTPUT, INPUT, BRANCH, SEQUENCE, CHOICE, IF, WHILE, PARALLEL}
+
+	/**
+	 * Processo di un programma casuale: i figli di CHOICE sono rami BRANCH, ognuno con il proprio corpo;
+	 * un INPUT di {@code r} può avere un corpo.
+	 */
+	private record Process(Kind kind, String op, List<Process> children) {
+
+		/**
+		 * Processi ottenuti sostituendo un sottoprocesso con un suo figlio o con nullProcess, oppure togliendo un ramo.
+		 */
+		List<Process> smaller() {
+			List<Process> smaller = new ArrayList<>();
+			if (this.kind != Kind.BRANCH) {
+				for (Process child : this.children)
+					smaller.add(child.kind == Kind.BRANCH ? child.children.get(0) : child);
+				if (this.kind != Kind.NIL) smaller.add(new Process(Kind.NIL, null, List.of()));
+			}
+			if (this.children.size() > 1 && this.kind != Kind.IF)
+				for (int i = 0; i < this.children.size(); i++) {
+					List<Process> children = new ArrayList<>(this.children);
+					children.remove(i);
+					smaller.add(new Process(this.kind, this.op, children));
+				}
+			for (int i = 0; i < this.children.size(); i++)
+				for (Process child : this.children.get(i).smaller()) {
+					if (this.children.get(i).kind == Kind.BRANCH && child.kind != Kind.BRANCH) continue;
+					List<Process> children = new ArrayList<>(this.children);
+					children.set(i, child);
+					smaller.add(new Process(this.kind, this.op, children));
+				}
+			return smaller;
+		}
+
+		@Override
+		public String toString() {
+			return switch (this.kind) {
+				case NIL -> "nullProcess";
+				case OUTPUT -> this.op.equals("r") ? "r@Other( \"x\" )( y )" : this.op + "@Other( \"x\" )";
+				case INPUT -> this.op.equals("r")
+						              ? "r( x )( y ) {\n" + (this.children.isEmpty() ? "nullProcess" : this.children.get(0)) + "\n}"
+						              : this.op + "( x )";
+				case BRANCH -> "[ " + this.op + "( x ) ] {\n" + this.children.get(0) + "\n}";
+				case SEQUENCE -> this.children.stream().map(Process::toString).collect(Collectors.joining(";\n"));
+				case CHOICE -> this.children.stream().map(Process::toString).collect(Collectors.joining("\n"));
+				case IF -> "if ( x == \"1\" ) {\n" + this.children.get(0) + "\n} else {\n" + this.children.get(1) + "\n}";
+				case WHILE -> "while ( x == \"1\" ) {\n" + this.children.stream().map(Process::toString)
+						                                                .collect(Collectors.joining(";\n")) + "\n}";
+				case PARALLEL -> this.children.stream().map(child -> "{\n" + child + "\n}").collect(Collectors.joining(" | "));
+			};
+		}
+	}
+}
@@ -1,24 +1,197 @@
 package it.unibo.tesi.chorol.utils;
 
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
 import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
 import it.unibo.tesi.chorol.visitor.flow.graph.RequestEdge;
 import it.unibo.tesi.chorol.visitor.flow.graph.State;
 import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
 import jolie.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class GraphUtils {
+	private static final Logger logger = LoggerFactory.getLogger(GraphUtils.class);
+	// etichetta riservata che marca l'uscita di un frammento durante la minimizzazione composizionale
+	private static final String FRAGMENT_END = "\0END";
 
-	public static void clearGraph(FlowGraph flowGraph) {
-		FlowGraph nfaNoEpsilon = GraphUtils.removeEpsilonTransitions(flowGraph);
-		FlowGraph dfa = GraphUtils.convertToDFA(nfaNoEpsilon);
+	/**
+	 * Minimizza il grafo di un servizio. Se la determinizzazione supera il budget configurato
+	 * il grafo viene sostituito dall'NFA senza epsilon, segnalando il servizio responsabile.
+	 * Con una proiezione configurata le etichette escluse vengono nascoste prima di minimizzare.
+	 */
+	public static void clearGraph(FlowGraph flowGraph, String serviceName) {
+		GraphUtils.project(flowGraph, serviceName);
+		GraphUtils.trim(flowGraph, serviceName, true);
+		FlowGraph nfa = GraphUtils.removeEpsilonTransitions(flowGraph);
+		GraphUtils.trim(nfa, serviceName, false);
+		FlowGraph nfaNoEpsilon = GraphUtils.reduceBisimilar(nfa);
+		FlowGraph dfa;
+		try {
+			dfa = GraphUtils.convertToDFA(nfaNoEpsilon);
+		} catch (DeterminizationBudgetException e) {
+			GraphUtils.logger.warn("Service {}: {}, falling back to the epsilon-free NFA ({} states)",
+					serviceName, e.getMessage(), nfaNoEpsilon.vertexSet().size());
+			flowGraph.replace(nfaNoEpsilon);
+			return;
+		}
 		Set<State> dfaFinalStates = new HashSet<>();
 		dfaFinalStates.add(dfa.getEndNode());
 		flowGraph.replace(GraphUtils.minimizeDFA(dfa, dfa.getStartNode(), dfaFinalStates));
 	}
 
+	/**
+	 * Percorso di riferimento, senza potature, quozienti né determinizzazione parallela: rimozione delle
+	 * epsilon, subset construction e minimizzazione. È l'oracolo di {@link DifferentialCheck}.
+	 */
+	static FlowGraph reference(FlowGraph flowGraph) {
+		FlowGraph nfa = GraphUtils.removeEpsilonTransitions(flowGraph);
+		boolean parallel = AnalysisSettings.getParallelDeterminization();
+		AnalysisSettings.setParallelDeterminization(false);
+		try {
+			FlowGraph dfa = GraphUtils.convertToDFA(nfa);
+			Set<State> dfaFinalStates = new HashSet<>();
+			dfaFinalStates.add(dfa.getEndNode());
+			return GraphUtils.minimizeDFA(dfa, dfa.getStartNode(), dfaFinalStates);
+		} finally {
+			AnalysisSettings.setParallelDeterminization(parallel);
+		}
+	}
+
+	/**
+	 * Interleaving dei rami di un blocco parallelo (vedi {@link Interleaving});
+	 * restituisce null se il prodotto supera il budget, e il chiamante ripiega sulla scelta tra i rami.
+	 */
+	public static FlowGraph interleave(List<FlowGraph> branches, String serviceName) {
+		try {
+			return Interleaving.interleave(branches);
+		} catch (DeterminizationBudgetException e) {
+			GraphUtils.logger.warn("Service {}: parallel block not interleaved, {}", serviceName, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Sessioni concorrenti di {@code session} con l'astrazione a contatori (vedi {@link CounterAbstraction}):
+	 * al più {@code bound} sessioni attive insieme, senza limite se negativo.
+	 * Restituisce null se il grafo supera il budget.
+	 */
+	public static FlowGraph replicateSessions(FlowGraph session, int bound, String serviceName) {
+		try {
+			return CounterAbstraction.sessions(session, bound);
+		} catch (DeterminizationBudgetException e) {
+			GraphUtils.logger.warn("Service {}: sessions not replicated, {}", serviceName, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Istanze parallele del corpo di uno spawn, {@code instances} o un numero non noto se negativo;
+	 * restituisce null se il grafo supera il budget, e il chiamante ripiega su una sola istanza.
+	 */
+	public static FlowGraph replicateSpawn(FlowGraph body, int instances, String serviceName) {
+		try {
+			return CounterAbstraction.spawn(body, instances);
+		} catch (DeterminizationBudgetException e) {
+			GraphUtils.logger.warn("Service {}: spawn not replicated, {}", serviceName, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Minimizza un frammento preservandone l'interfaccia, per la minimizzazione composizionale.
+	 * Lo stato finale viene collegato a un pozzo con un'etichetta riservata: dopo determinizzazione
+	 * e minimizzazione il pozzo è di nuovo l'unico stato finale, raggiunto con transizioni epsilon.
+	 * I frammenti che terminano in uno stato END/EXIT/FAULT, o che superano il budget, restano invariati.
+	 */
+	public static FlowGraph minimizeFragment(FlowGraph fragment, String serviceName) {
+		if (fragment == null || fragment.getStartNode() == null ||
+				    !fragment.getEndNode().getStateType().equals(StateType.NORMAL))
+			return fragment;
+
+		FlowGraph marked = new FlowGraph();
+		marked.copyGraph(fragment);
+		marked.setStartNode(fragment.getStartNode());
+		State sink = State.createState();
+		marked.addVertex(sink);
+		marked.addEdge(fragment.getEndNode(), sink, new RequestEdge(GraphUtils.FRAGMENT_END));
+		marked.setEndNode(sink);
+
+		CompactGraph dfa;
+		try {
+			GraphUtils.trim(marked, serviceName, true);
+			FlowGraph nfa = GraphUtils.removeEpsilonTransitions(marked);
+			GraphUtils.trim(nfa, serviceName, false);
+			dfa = CompactGraph.of(GraphUtils.convertToDFA(nfa));
+		} catch (DeterminizationBudgetException e) {
+			GraphUtils.logger.debug("Service {}: fragment left as is, {}", serviceName, e.getMessage());
+			return fragment;
+		}
+
+		// partizione iniziale per tipo di stato, con il pozzo in un blocco a parte
+		int marker = dfa.labelId(GraphUtils.FRAGMENT_END);
+		int[] initial = new int[dfa.size()];
+		for (int s = 0; s < dfa.size(); s++) initial[s] = dfa.type(s).ordinal() + 1;
+		for (int s = 0; s < dfa.size(); s++)
+			for (int e = dfa.firstEdge(s); e < dfa.lastEdge(s); e++)
+				if (dfa.label(e) == marker) initial[dfa.target(e)] = 0;
+		CompactGraph minimized = PartitionRefinement.quotient(dfa, initial);
+		return GraphUtils.toFragment(minimized, marker);
+	}
+
+	/**
+	 * Converte il frammento minimizzato in FlowGraph: gli archi marcati diventano epsilon verso il pozzo,
+	 * che diventa lo stato finale.
+	 */
+	private static FlowGraph toFragment(CompactGraph minimized, int marker) {
+		FlowGraph fragment = new FlowGraph();
+		State[] states = new State[minimized.size()];
+		for (int s = 0; s < minimized.size(); s++) {
+			states[s] = State.createState();
+			states[s].setStateType(minimized.type(s));
+			fragment.addVertex(states[s]);
+		}
+		State end = null;
+		for (int s = 0; s < minimized.size(); s++)
+			for (int e = minimized.firstEdge(s); e < minimized.lastEdge(s); e++) {
+				State target = states[minimized.target(e)];
+				if (minimized.label(e) == marker) {
+					end = target;
+					fragment.addEdge(states[s], target, new RequestEdge());
+				} else fragment.addEdge(states[s], target, minimized.symbol(minimized.label(e)));
+			}
+		fragment.setStartNode(states[minimized.start()]);
+		fragment.setEndNode(end != null ? end : State.createState());
+		return fragment;
+	}
+
+	/**
+	 * Sostituisce il grafo con la sua proiezione (vedi {@link LabelProjection}), se configurata.
+	 */
+	private static void project(FlowGraph flowGraph, String serviceName) {
+		LabelProjection projection = AnalysisSettings.getProjection();
+		if (projection == null || flowGraph.getStartNode() == null) return;
+		CompactGraph graph = CompactGraph.of(flowGraph);
+		CompactGraph projected = projection.apply(graph);
+		GraphUtils.logger.debug("Service {}: projection keeps {} of {} labels", serviceName,
+				projected.alphabetSize(), graph.alphabetSize());
+		flowGraph.replace(projected.toFlowGraph());
+	}
+
+	/**
+	 * Potatura prima di una fase costosa (vedi {@link ReachabilityTrim}). I vicoli ciechi si cercano solo
+	 * prima di togliere le epsilon: dopo, lo stato finale può essere raggiunto solo attraverso le chiusure.
+	 */
+	private static void trim(FlowGraph graph, String serviceName, boolean deadEnds) {
+		int before = graph.vertexSet().size();
+		int removed = ReachabilityTrim.trim(graph, deadEnds);
+		if (removed > 0)
+			GraphUtils.logger.debug("Service {}: trimmed {} of {} states", serviceName, removed, before);
+	}
+
 	private static FlowGraph removeEpsilonTransitions(FlowGraph flowGraph) {
 		FlowGraph nfa = new FlowGraph();
 		Map<State, State> stateMapping = new HashMap<>();
@@ -45,7 +218,7 @@ public class GraphUtils {
 					String label = edge.getLabel();
 					if (label != null && !label.isEmpty()) {
 						State target = flowGraph.getEdgeTarget(edge);
-						nfa.addEdge(stateMapping.get(s), stateMapping.get(target), new RequestEdge(label));
+						nfa.addEdge(stateMapping.get(s), stateMapping.get(target), label);
 					}
 				}
 		}
@@ -55,13 +228,34 @@ public class GraphUtils {
 		return nfa;
 	}
 
+	/**
+	 * Quoziente dell'NFA senza epsilon rispetto alla bisimulazione forte, che preserva il linguaggio:
+	 * gli stati dello stesso tipo con le stesse mosse a meno di bisimilarità vengono fusi,
+	 * così la subset construction parte da meno stati. Lo stato finale resta in un blocco a sé.
+	 */
+	private static FlowGraph reduceBisimilar(FlowGraph nfa) {
+		CompactGraph graph = CompactGraph.of(nfa);
+		if (graph.size() == 0) return nfa;
+		int[] initial = new int[graph.size()];
+		for (int s = 0; s < graph.size(); s++) initial[s] = graph.type(s).ordinal() + 1;
+		initial[graph.end()] = 0;
+		CompactGraph reduced = PartitionRefinement.quotient(graph, initial);
+		GraphUtils.logger.debug("Bisimulation quotient: {} -> {} states", graph.size(), reduced.size());
+		return reduced.toFlowGraph();
+	}
+
 	/**
 	 * Converte l'NFA (senza epsilon) in un DFA usando la subset construction.
 	 * Se in un insieme di stati è presente un nodo di tipo END,
 	 * il corrispondente stato DFA viene marcato come END.
+	 * Se più insiemi contengono lo stato finale dell'NFA, tutti restano finali: vengono collegati con una epsilon
+	 * a un nuovo stato finale senza archi uscenti (vedi {@link #joinFinalStates}).
 	 */
 	private static FlowGraph convertToDFA(FlowGraph nfa) {
+		if (AnalysisSettings.getParallelDeterminization()) return ParallelDeterminizer.determinize(nfa);
 		FlowGraph dfa = new FlowGraph();
+		DeterminizationBudget budget = new DeterminizationBudget(DeterminizationBudget.SUBSET_ELEMENT);
+		Minterms minterms = new Minterms();
 		Map<Set<State>, State> dfaStates = new HashMap<>();
 		Queue<Set<State>> queue = new LinkedList<>();
 
@@ -76,6 +270,7 @@ public class GraphUtils {
 		if (startSet.stream().anyMatch(s -> s.getStateType().equals(StateType.EXIT)))
 			dfaStart.setStateType(StateType.EXIT);
 
+		budget.charge(startSet.size());
 		dfa.addVertex(dfaStart);
 		dfaStates.put(startSet, dfaStart);
 		queue.add(startSet);
@@ -99,11 +294,13 @@ public class GraphUtils {
 						transitions.get(symbol).add(target);
 					}
 				}
+			GraphUtils.groupGuards(transitions, minterms);
 
 			for (Map.Entry<String, Set<State>> entry : transitions.entrySet()) {
 				String symbol = entry.getKey();
 				Set<State> destSet = entry.getValue();
 				if (!dfaStates.containsKey(destSet)) {
+					budget.charge(destSet.size());
 					State newDfaState = State.createState();
 					if (destSet.stream().anyMatch(s -> s.getStateType().equals(StateType.FAULT)))
 						newDfaState.setStateType(StateType.FAULT);
@@ -117,16 +314,45 @@ public class GraphUtils {
 					if (destSet.contains(nfa.getEndNode()))
 						dfaFinalStates.add(newDfaState);
 				}
-				dfa.addEdge(currentDfaState, dfaStates.get(destSet), new RequestEdge(symbol));
+				dfa.addEdge(currentDfaState, dfaStates.get(destSet), symbol);
 			}
 		}
 
 		dfa.setStartNode(dfaStates.get(startSet));
-		State dfaFinal = dfaFinalStates.isEmpty() ? dfa.getStartNode() : dfaFinalStates.iterator().next();
-		dfa.setEndNode(dfaFinal);
+		dfa.setEndNode(GraphUtils.joinFinalStates(dfa, dfaFinalStates));
 		return dfa;
 	}
 
+	/**
+	 * Stato finale del DFA: l'unico stato finale, oppure, se sono più di uno, un nuovo stato raggiunto da tutti
+	 * con una epsilon. La epsilon entra solo nello stato finale, che non ha archi uscenti, quindi il grafo resta
+	 * deterministico su ogni etichetta e la minimizzazione la tratta come un simbolo che marca l'accettazione.
+	 */
+	static State joinFinalStates(FlowGraph dfa, Collection<State> finalStates) {
+		if (finalStates.isEmpty()) return dfa.getStartNode();
+		if (finalStates.size() == 1) return finalStates.iterator().next();
+		State end = State.createState();
+		dfa.addVertex(end);
+		finalStates.forEach(state -> dfa.addEdge(state, end, (String) null));
+		return end;
+	}
+
+	/**
+	 * Sostituisce le guardie uscenti da un insieme di stati con i loro mintermini (vedi {@link Minterms}).
+	 */
+	private static void groupGuards(Map<String, Set<State>> transitions, Minterms minterms) {
+		List<String> guards = transitions.keySet().stream().filter(Guard::isGuard).sorted().toList();
+		if (guards.size() < 2) return;
+		List<Minterms.Group> groups = minterms.partition(guards);
+		if (groups == null) return;
+		List<Set<State>> targets = guards.stream().map(transitions::remove).toList();
+		for (Minterms.Group group : groups) {
+			Set<State> union = new HashSet<>();
+			for (int g : group.members()) union.addAll(targets.get(g));
+			transitions.put(group.label(), union);
+		}
+	}
+
 	/**
 	 * Calcola la epsilon closure per un dato stato.
 	 */
@@ -185,7 +411,7 @@ public class GraphUtils {
 					}
 					// Per poter usare la firma come chiave, la convertiamo in una stringa ordinata
 					String signatureKey = signature.entrySet().stream()
-							                      .sorted(Map.Entry.comparingByKey())
+							                      .sorted(Map.Entry.comparingByKey(Comparator.nullsFirst(Comparator.naturalOrder())))
 							                      .map(e -> e.getKey() + ":" +
 									                                e.getValue().stream()
 											                                .map(Object::hashCode)
@@ -247,7 +473,7 @@ public class GraphUtils {
 						}
 				}
 			for (Pair<String, State> tr : transizioni)
-				minimizzato.addEdge(statoMin, tr.value(), new RequestEdge(tr.key()));
+				minimizzato.addEdge(statoMin, tr.value(), tr.key());
 		}
 
 		minimizzato.setStartNode(minStart);
@@ -0,0 +1,69 @@
+package it.unibo.tesi.chorol.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store sullo heap: una tabella hash dai vettori al loro indice.
+ */
+final class HeapStateStore implements StateStore {
+	private final Map<Key, Integer> index = new HashMap<>();
+	private final List<int[]> vectors = new ArrayList<>();
+
+	@Override
+	public int put(int[] vector) {
+		return this.index.computeIfAbsent(new Key(vector), key -> {
+			this.vectors.add(vector);
+			return this.vectors.size() - 1;
+		});
+	}
+
+	@Override
+	public int find(int[] vector) {
+		return this.index.getOrDefault(new Key(vector), -1);
+	}
+
+	@Override
+	public int[] get(int index) {
+		return this.vectors.get(index);
+	}
+
+	@Override
+	public int size() {
+		return this.vectors.size();
+	}
+
+	@Override
+	public long bytesPerElement() {
+		return 4;
+	}
+
+	@Override
+	public void close() {
+		this.index.clear();
+		this.vectors.clear();
+	}
+
+	private static final class Key {
+		private final int[] vector;
+		private final int hash;
+
+		private Key(int[] vector) {
+			this.vector = vector;
+			this.hash = Arrays.hashCode(vector);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key other && this.hash == other.hash && Arrays.equals(this.vector, other.vector);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+}
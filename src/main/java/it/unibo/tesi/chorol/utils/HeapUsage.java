@@ -0,0 +1,35 @@
+package it.unibo.tesi.chorol.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Misure dello heap tramite i MemoryPoolMXBean. Il picco è la somma dei picchi dei singoli pool,
+ * che non sono necessariamente simultanei: è quindi una stima per eccesso.
+ */
+public final class HeapUsage {
+
+	private HeapUsage() {
+	}
+
+	public static long peak() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	public static void resetPeak() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) pool.resetPeakUsage();
+	}
+
+	/**
+	 * Heap occupato dopo una garbage collection, cioè dagli oggetti ancora raggiungibili.
+	 */
+	public static long retained() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
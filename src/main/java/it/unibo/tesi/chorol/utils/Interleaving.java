@@ -0,0 +1,96 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.List;
+
+/**
+ * Prodotto asincrono (interleaving) dei rami di un blocco parallelo, costruito in ampiezza.
+ * Ogni ordine delle mosse dei rami resta nel grafo, anche quando due mosse sono indipendenti:
+ * il risultato viene esportato, monitorato e verificato come protocollo, quindi deve riconoscere
+ * tutti gli interleaving e non un rappresentante per classe. Gli stati che ne risultano equivalenti
+ * vengono fusi dalla minimizzazione.
+ */
+final class Interleaving {
+	private final CompactGraph[] components;
+
+	private Interleaving(List<FlowGraph> branches) {
+		this.components = branches.stream().map(CompactGraph::of).toArray(CompactGraph[]::new);
+	}
+
+	/**
+	 * Interleaving dei rami; lancia {@link DeterminizationBudgetException} se il prodotto supera il budget.
+	 */
+	static FlowGraph interleave(List<FlowGraph> branches) {
+		return new Interleaving(branches).run().toFlowGraph();
+	}
+
+	private CompactGraph run() {
+		int k = this.components.length;
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		int[] start = new int[k];
+		int[] end = new int[k];
+		for (int c = 0; c < k; c++) {
+			start[c] = this.components[c].start();
+			end[c] = this.components[c].end();
+		}
+
+		try (StateStore states = StateStore.create(k)) {
+			DeterminizationBudget budget = new DeterminizationBudget(states.bytesPerElement());
+			this.stateOf(start, states, builder, budget);
+			// gli stati ancora da espandere sono quelli con indice maggiore di source
+			for (int source = 0; source < states.size(); source++) {
+				int[] current = states.get(source);
+				if (this.typeOf(current) == StateType.EXIT) continue;
+
+				int edges = builder.edgeCount();
+				for (int c = 0; c < k; c++) {
+					CompactGraph graph = this.components[c];
+					for (int e = graph.firstEdge(current[c]); e < graph.lastEdge(current[c]); e++) {
+						int[] next = current.clone();
+						next[c] = graph.target(e);
+						builder.addEdge(source, graph.symbol(graph.label(e)), this.stateOf(next, states, builder, budget));
+					}
+				}
+				budget.chargeEdges(builder.edgeCount() - edges);
+			}
+
+			builder.setStart(0);
+			int last = states.find(end);
+			builder.setEnd(last >= 0 ? last : builder.addState(StateType.NORMAL));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Indice della tupla, che diventa anche uno stato del grafo se non era ancora stata raggiunta.
+	 */
+	private int stateOf(int[] tuple, StateStore states, CompactGraph.Builder builder, DeterminizationBudget budget) {
+		int size = states.size();
+		int index = states.put(tuple);
+		if (index == size) {
+			budget.charge(tuple.length);
+			builder.addState(this.typeOf(tuple));
+		}
+		return index;
+	}
+
+	/**
+	 * EXIT e FAULT si propagano subito; END solo quando ogni ramo è terminato.
+	 */
+	private StateType typeOf(int[] tuple) {
+		boolean fault = false, end = false, exit = false, done = true;
+		for (int c = 0; c < tuple.length; c++) {
+			StateType type = this.components[c].type(tuple[c]);
+			fault |= type == StateType.FAULT;
+			end |= type == StateType.END;
+			exit |= type == StateType.EXIT;
+			done &= type == StateType.END || tuple[c] == this.components[c].end();
+		}
+		if (exit) return StateType.EXIT;
+		if (end && done) return StateType.END;
+		return fault ? StateType.FAULT : StateType.NORMAL;
+	}
+}
@@ -0,0 +1,105 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+/**
+ * Proiezione sulle interazioni di interesse: le etichette di comunicazione ("tipo\nop@servizio\ntipo")
+ * che rispettano tutti i filtri restano, le altre (comprese guardie ed etichette interne) diventano epsilon.
+ * Un filtro null accetta tutto; servizio e operazione sono espressioni regolari sull'intero nome,
+ * la direzione è il prefisso del tipo di operazione (Input o Output).
+ */
+public final class LabelProjection {
+	private final Pattern service;
+	private final String direction;
+	private final Pattern operation;
+
+	public LabelProjection(String service, String direction, String operation) {
+		this.service = service == null ? null : Pattern.compile(service);
+		this.direction = direction;
+		this.operation = operation == null ? null : Pattern.compile(operation);
+	}
+
+	public boolean keeps(String label) {
+		if (CompactGraph.isEpsilon(label)) return false;
+		String display = Guard.display(label);
+		int line = display.indexOf("\\n");
+		int at = display.indexOf('@', line + 2);
+		if (line < 0 || at < 0) return false;
+		int end = display.indexOf("\\n", at);
+		String kind = display.substring(0, line);
+		String name = display.substring(line + 2, at);
+		String target = display.substring(at + 1, end < 0 ? display.length() : end);
+		return (this.direction == null || kind.regionMatches(true, 0, this.direction, 0, this.direction.length())) &&
+				       (this.service == null || this.service.matcher(target).matches()) &&
+				       (this.operation == null || this.operation.matcher(name).matches());
+	}
+
+	/**
+	 * Grafo proiettato e senza epsilon. Oltre agli archi delle chiusure, ogni arco verso uno stato
+	 * che raggiunge la fine solo con epsilon viene duplicato verso lo stato finale, perché dopo la
+	 * proiezione la fine è spesso preceduta da azioni nascoste; i tipi END/EXIT/FAULT si propagano
+	 * lungo le chiusure come in {@link GraphUtils#clearGraph}.
+	 */
+	public CompactGraph apply(CompactGraph graph) {
+		int n = graph.size();
+		boolean[] visible = new boolean[graph.alphabetSize()];
+		for (int id = 0; id < visible.length; id++) visible[id] = this.keeps(graph.symbol(id));
+
+		BitSet[] closures = new BitSet[n];
+		int[] worklist = new int[n];
+		for (int s = 0; s < n; s++) {
+			BitSet closure = new BitSet(n);
+			int top = 0;
+			closure.set(s);
+			worklist[top++] = s;
+			while (top > 0) {
+				int t = worklist[--top];
+				for (int e = graph.firstEdge(t); e < graph.lastEdge(t); e++) {
+					int label = graph.label(e);
+					if (label != CompactGraph.EPSILON && visible[label]) continue;
+					if (closure.get(graph.target(e))) continue;
+					closure.set(graph.target(e));
+					worklist[top++] = graph.target(e);
+				}
+			}
+			closures[s] = closure;
+		}
+
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		for (int s = 0; s < n; s++) builder.addState(LabelProjection.typeOf(graph, closures[s]));
+		for (int s = 0; s < n; s++)
+			for (int t = closures[s].nextSetBit(0); t >= 0; t = closures[s].nextSetBit(t + 1))
+				for (int e = graph.firstEdge(t); e < graph.lastEdge(t); e++) {
+					int label = graph.label(e);
+					if (label == CompactGraph.EPSILON || !visible[label]) continue;
+					builder.addEdge(s, graph.symbol(label), graph.target(e));
+					if (closures[graph.target(e)].get(graph.end()))
+						builder.addEdge(s, graph.symbol(label), graph.end());
+				}
+		builder.setStart(graph.start());
+		builder.setEnd(graph.end());
+		return builder.build();
+	}
+
+	private static StateType typeOf(CompactGraph graph, BitSet closure) {
+		boolean fault = false, end = false, exit = false;
+		for (int t = closure.nextSetBit(0); t >= 0; t = closure.nextSetBit(t + 1)) {
+			fault |= graph.type(t) == StateType.FAULT;
+			end |= graph.type(t) == StateType.END;
+			exit |= graph.type(t) == StateType.EXIT;
+		}
+		if (exit) return StateType.EXIT;
+		if (end) return StateType.END;
+		return fault ? StateType.FAULT : StateType.NORMAL;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s/%s/%s", this.service, this.direction, this.operation);
+	}
+}
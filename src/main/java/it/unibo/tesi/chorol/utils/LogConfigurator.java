@@ -0,0 +1,41 @@
+package it.unibo.tesi.chorol.utils;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import org.slf4j.Logger;
+
+/**
+ * Configurazione programmatica di logback, caricata via ServiceLoader.
+ * Equivale a logback.xml ma evita il parsing XML (Joran) all'avvio.
+ * Se è impostata la proprietà logback.configurationFile si lascia fare a logback.
+ */
+public class LogConfigurator extends ContextAwareBase implements Configurator {
+	private static final String PATTERN = "%-5level %logger{20} - %msg%n";
+
+	@Override
+	public ExecutionStatus configure(LoggerContext context) {
+		if (System.getProperty("logback.configurationFile") != null)
+			return ExecutionStatus.INVOKE_NEXT_IF_ANY;
+
+		PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+		encoder.setContext(context);
+		encoder.setPattern(LogConfigurator.PATTERN);
+		encoder.start();
+
+		ConsoleAppender<ILoggingEvent> appender = new ConsoleAppender<>();
+		appender.setContext(context);
+		appender.setName("CONSOLE");
+		appender.setEncoder(encoder);
+		appender.start();
+
+		ch.qos.logback.classic.Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+		root.setLevel(Level.INFO);
+		root.addAppender(appender);
+		return ExecutionStatus.DO_NOT_INVOKE_NEXT_IF_ANY;
+	}
+}
@@ -0,0 +1,193 @@
+package it.unibo.tesi.chorol.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Store fuori dallo heap, su file temporanei mappati in memoria a regioni di 64 MB: i vettori sono scritti
+ * uno dopo l'altro in ordine di indice, e la tabella hash a indirizzamento aperto (scansione lineare)
+ * contiene per ogni slot l'hash del vettore e il suo indice più uno, 0 se lo slot è libero.
+ * Il sistema operativo scarica su disco le pagine meno usate, quindi l'insieme degli stati visitati può superare
+ * sia lo heap sia la RAM; il grafo prodotto resta invece sullo heap, e il budget ne conta stati e archi
+ * (vedi {@link DeterminizationBudget#chargeEdges}). I file vengono cancellati alla chiusura.
+ */
+final class MappedStateStore implements StateStore {
+	private static final int CHUNK_BITS = 26;
+	private static final long CHUNK = 1L << MappedStateStore.CHUNK_BITS;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	private final Path directory;
+	private final int width;
+	private final int vectorsPerChunk;
+	private final FileChannel vectorChannel;
+	private final List<IntBuffer> vectorChunks = new ArrayList<>();
+	private int size;
+
+	private FileChannel tableChannel;
+	private List<LongBuffer> tableChunks;
+	private long capacity;
+
+	MappedStateStore(Path directory, int width) {
+		this.directory = directory;
+		this.width = Math.max(width, 1);
+		this.vectorsPerChunk = (int) (MappedStateStore.CHUNK / (4L * this.width));
+		try {
+			Files.createDirectories(directory);
+			this.vectorChannel = this.open("states");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.allocateTable(MappedStateStore.INITIAL_CAPACITY);
+	}
+
+	@Override
+	public int put(int[] vector) {
+		int hash = MappedStateStore.hash(vector);
+		long slot = this.probe(vector, hash);
+		long entry = this.slot(slot);
+		if (entry != 0) return (int) entry - 1;
+		if (this.size == Integer.MAX_VALUE - 1) throw new IllegalStateException("State store full");
+		if (2L * (this.size + 1) > this.capacity) {
+			this.allocateTable(this.capacity * 2);
+			slot = this.probe(vector, hash);
+		}
+		int index = this.size++;
+		int chunk = index / this.vectorsPerChunk;
+		if (chunk == this.vectorChunks.size()) this.vectorChunks.add(this.map(this.vectorChannel, chunk, MappedStateStore.CHUNK).asIntBuffer());
+		this.vectorChunks.get(chunk).put((index % this.vectorsPerChunk) * this.width, vector, 0, this.width);
+		this.setSlot(slot, ((long) hash << 32) | (index + 1L));
+		return index;
+	}
+
+	@Override
+	public int find(int[] vector) {
+		long entry = this.slot(this.probe(vector, MappedStateStore.hash(vector)));
+		return (int) entry - 1;
+	}
+
+	@Override
+	public int[] get(int index) {
+		int[] vector = new int[this.width];
+		this.vectorChunks.get(index / this.vectorsPerChunk).get((index % this.vectorsPerChunk) * this.width, vector, 0, this.width);
+		return vector;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public long bytesPerElement() {
+		return 0;
+	}
+
+	@Override
+	public void close() {
+		this.vectorChunks.clear();
+		this.tableChunks.clear();
+		try {
+			this.vectorChannel.close();
+			this.tableChannel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Slot che contiene il vettore, oppure il primo slot libero della sua sequenza di scansione.
+	 */
+	private long probe(int[] vector, int hash) {
+		long mask = this.capacity - 1;
+		for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+			long entry = this.slot(slot);
+			if (entry == 0) return slot;
+			if ((int) (entry >>> 32) == hash && this.matches((int) entry - 1, vector)) return slot;
+		}
+	}
+
+	private boolean matches(int index, int[] vector) {
+		IntBuffer chunk = this.vectorChunks.get(index / this.vectorsPerChunk);
+		int offset = (index % this.vectorsPerChunk) * this.width;
+		for (int i = 0; i < this.width; i++)
+			if (chunk.get(offset + i) != vector[i]) return false;
+		return true;
+	}
+
+	/**
+	 * Crea una tabella vuota della capacità indicata (potenza di due) e vi reinserisce gli slot della precedente.
+	 */
+	private void allocateTable(long capacity) {
+		FileChannel previousChannel = this.tableChannel;
+		List<LongBuffer> previous = this.tableChunks;
+		long previousCapacity = this.capacity;
+		try {
+			this.tableChannel = this.open("table");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.tableChunks = new ArrayList<>();
+		long bytes = capacity * 8;
+		for (int chunk = 0; (long) chunk * MappedStateStore.CHUNK < bytes; chunk++)
+			this.tableChunks.add(this.map(this.tableChannel, chunk, Math.min(MappedStateStore.CHUNK, bytes)).asLongBuffer());
+		this.capacity = capacity;
+		if (previous == null) return;
+
+		long mask = capacity - 1;
+		int perChunk = (int) (MappedStateStore.CHUNK / 8);
+		for (long slot = 0; slot < previousCapacity; slot++) {
+			long entry = previous.get((int) (slot / perChunk)).get((int) (slot % perChunk));
+			if (entry == 0) continue;
+			long target = (int) (entry >>> 32) & mask;
+			while (this.slot(target) != 0) target = (target + 1) & mask;
+			this.setSlot(target, entry);
+		}
+		previous.clear();
+		try {
+			previousChannel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private long slot(long slot) {
+		int perChunk = (int) (MappedStateStore.CHUNK / 8);
+		return this.tableChunks.get((int) (slot / perChunk)).get((int) (slot % perChunk));
+	}
+
+	private void setSlot(long slot, long entry) {
+		int perChunk = (int) (MappedStateStore.CHUNK / 8);
+		this.tableChunks.get((int) (slot / perChunk)).put((int) (slot % perChunk), entry);
+	}
+
+	private FileChannel open(String prefix) throws IOException {
+		Path file = Files.createTempFile(this.directory, prefix, ".bin");
+		return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+	}
+
+	private MappedByteBuffer map(FileChannel channel, int chunk, long size) {
+		try {
+			return channel.map(FileChannel.MapMode.READ_WRITE, chunk * MappedStateStore.CHUNK, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Hash del vettore con i bit mescolati, perché la scansione lineare usa quelli bassi.
+	 */
+	private static int hash(int[] vector) {
+		int hash = Arrays.hashCode(vector) * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
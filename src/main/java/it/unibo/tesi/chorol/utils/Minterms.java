@@ -0,0 +1,84 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Partizione delle guardie uscenti da un insieme di stati nei loro mintermini soddisfacibili.
+ * Ogni assegnamento degli atomi seleziona le guardie vere; gli assegnamenti che selezionano le stesse
+ * guardie formano un gruppo, che nel DFA diventa un solo arco verso l'unione delle destinazioni.
+ * Guardie equivalenti scritte in modo diverso (IF[a] e IF#1[a], o gli ELSE di due if sulla stessa
+ * condizione) finiscono così nello stesso arco invece di generare insiemi distinti.
+ */
+final class Minterms {
+	// oltre questa soglia gli assegnamenti sono troppi e le guardie restano simboli distinti
+	private static final int MAX_ATOMS = 12;
+	private static final List<Group> TOO_MANY = new ArrayList<>();
+
+	private final Map<List<String>, List<Group>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Gruppo di mintermini: l'etichetta dell'arco nel DFA e gli indici delle guardie che contiene.
+	 */
+	record Group(String label, int[] members) {
+	}
+
+	/**
+	 * Raggruppa le etichette di guardia distinte e ordinate; null se coinvolgono troppi atomi.
+	 */
+	List<Group> partition(List<String> labels) {
+		List<Group> groups = this.cache.computeIfAbsent(labels, Minterms::compute);
+		return groups == Minterms.TOO_MANY ? null : groups;
+	}
+
+	private static List<Group> compute(List<String> labels) {
+		Guard[] guards = labels.stream().map(Guard::parse).toArray(Guard[]::new);
+		List<String> atoms = new ArrayList<>(new TreeSet<>(Arrays.stream(guards).flatMap(guard -> guard.atoms().stream()).toList()));
+		if (atoms.size() > Minterms.MAX_ATOMS) return Minterms.TOO_MANY;
+
+		// ogni congiunzione come coppia (maschera, valori) sugli indici degli atomi
+		long[][] masks = new long[guards.length][];
+		long[][] values = new long[guards.length][];
+		for (int g = 0; g < guards.length; g++) {
+			List<SortedMap<String, Boolean>> cubes = guards[g].cubes();
+			masks[g] = new long[cubes.size()];
+			values[g] = new long[cubes.size()];
+			for (int c = 0; c < cubes.size(); c++)
+				for (Map.Entry<String, Boolean> literal : cubes.get(c).entrySet()) {
+					long bit = 1L << atoms.indexOf(literal.getKey());
+					masks[g][c] |= bit;
+					if (literal.getValue()) values[g][c] |= bit;
+				}
+		}
+
+		Map<BitSet, List<Map<String, Boolean>>> assignments = new LinkedHashMap<>();
+		for (long assignment = 0; assignment < 1L << atoms.size(); assignment++) {
+			BitSet selected = new BitSet(guards.length);
+			for (int g = 0; g < guards.length; g++)
+				for (int c = 0; c < masks[g].length; c++)
+					if ((assignment & masks[g][c]) == values[g][c]) {
+						selected.set(g);
+						break;
+					}
+			if (selected.isEmpty()) continue;
+			Map<String, Boolean> cube = new TreeMap<>();
+			for (int a = 0; a < atoms.size(); a++) cube.put(atoms.get(a), (assignment & (1L << a)) != 0);
+			assignments.computeIfAbsent(selected, key -> new ArrayList<>()).add(cube);
+		}
+
+		List<Group> groups = new ArrayList<>();
+		assignments.forEach((selected, cubes) -> {
+			Guard guard = Guard.of(cubes);
+			int[] members = selected.stream().toArray();
+			String label = Arrays.stream(members)
+					               .filter(g -> guards[g].equals(guard))
+					               .mapToObj(labels::get)
+					               .findFirst()
+					               .orElseGet(() -> Guard.label("IF" + guard.describe(), guard));
+			groups.add(new Group(label, members));
+		});
+		return groups;
+	}
+}
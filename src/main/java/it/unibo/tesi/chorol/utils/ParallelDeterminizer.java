@@ -0,0 +1,216 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Subset construction parallela su un NFA senza epsilon.
+ * Gli insiemi di stati sono internati in una tabella concorrente e ogni nuovo insieme
+ * diventa un task del ForkJoinPool, che bilancia il lavoro tra i core con il work stealing.
+ * Al termine gli stati del DFA vengono rinumerati con una BFS che segue le etichette in ordine,
+ * quindi il risultato non dipende dall'interleaving dei thread. Gli stati finali e il budget
+ * sono trattati come nella versione sequenziale, così {@code -P} non cambia il risultato.
+ */
+final class ParallelDeterminizer {
+	private final CompactGraph nfa;
+	private final ConcurrentHashMap<Subset, Node> table = new ConcurrentHashMap<>();
+	private final DeterminizationBudget budget = new DeterminizationBudget(DeterminizationBudget.SUBSET_ELEMENT);
+	private final Minterms minterms = new Minterms();
+	// al primo superamento del budget i task ancora in coda terminano senza espandere
+	private volatile boolean aborted = false;
+
+	private ParallelDeterminizer(CompactGraph nfa) {
+		this.nfa = nfa;
+	}
+
+	static FlowGraph determinize(FlowGraph nfa) {
+		return new ParallelDeterminizer(CompactGraph.of(nfa)).run().toFlowGraph();
+	}
+
+	private CompactGraph run() {
+		Node start = new Node(new Subset(new int[]{this.nfa.start()}));
+		this.budget.charge(1);
+		this.table.put(start.subset, start);
+		ForkJoinPool.commonPool().invoke(new Expansion(null, start));
+		return this.renumber(start);
+	}
+
+	/**
+	 * Calcola le transizioni di un insieme; restituisce gli insiemi inseriti per la prima volta nella tabella.
+	 * Le guardie vengono raggruppate nei loro mintermini come nella versione sequenziale.
+	 */
+	private List<Node> expand(Node node) {
+		int count = 0;
+		for (int s : node.subset.states) count += this.nfa.lastEdge(s) - this.nfa.firstEdge(s);
+		long[] moves = new long[count];
+		int k = 0;
+		for (int s : node.subset.states)
+			for (int e = this.nfa.firstEdge(s); e < this.nfa.lastEdge(s); e++)
+				if (this.nfa.label(e) != CompactGraph.EPSILON)
+					moves[k++] = ((long) this.nfa.label(e) << 32) | this.nfa.target(e);
+		Arrays.sort(moves, 0, k);
+
+		// destinazioni per etichetta, nell'ordine dell'alfabeto
+		List<String> symbols = new ArrayList<>();
+		List<int[]> destinations = new ArrayList<>();
+		int[] buffer = new int[k];
+		int i = 0;
+		while (i < k) {
+			int label = (int) (moves[i] >>> 32);
+			int size = 0;
+			for (; i < k && (int) (moves[i] >>> 32) == label; i++) {
+				int target = (int) moves[i];
+				if (size == 0 || buffer[size - 1] != target) buffer[size++] = target;
+			}
+			symbols.add(this.nfa.symbol(label));
+			destinations.add(Arrays.copyOf(buffer, size));
+		}
+		this.groupGuards(symbols, destinations);
+
+		List<Node> successors = new ArrayList<>();
+		List<Node> created = new ArrayList<>();
+		for (int[] destination : destinations) {
+			Node successor = new Node(new Subset(destination));
+			Node previous = this.table.putIfAbsent(successor.subset, successor);
+			if (previous == null) {
+				created.add(successor);
+				try {
+					this.budget.charge(destination.length);
+				} catch (DeterminizationBudgetException e) {
+					this.aborted = true;
+					throw e;
+				}
+			} else successor = previous;
+			successors.add(successor);
+		}
+		node.symbols = symbols.toArray(new String[0]);
+		node.successors = successors.toArray(new Node[0]);
+		return created;
+	}
+
+	/**
+	 * Sostituisce le guardie con i loro mintermini, mantenendo le etichette in ordine.
+	 */
+	private void groupGuards(List<String> symbols, List<int[]> destinations) {
+		List<String> guards = symbols.stream().filter(Guard::isGuard).toList();
+		if (guards.size() < 2) return;
+		List<Minterms.Group> groups = this.minterms.partition(guards);
+		if (groups == null) return;
+		List<int[]> targets = guards.stream().map(guard -> destinations.get(symbols.indexOf(guard))).toList();
+		TreeMap<String, int[]> merged = new TreeMap<>();
+		for (int j = 0; j < symbols.size(); j++)
+			if (!Guard.isGuard(symbols.get(j))) merged.put(symbols.get(j), destinations.get(j));
+		for (Minterms.Group group : groups)
+			merged.put(group.label(), Arrays.stream(group.members())
+					                          .flatMap(g -> Arrays.stream(targets.get(g)))
+					                          .sorted().distinct().toArray());
+		symbols.clear();
+		destinations.clear();
+		symbols.addAll(merged.keySet());
+		destinations.addAll(merged.values());
+	}
+
+	private CompactGraph renumber(Node start) {
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		Map<Node, Integer> index = new IdentityHashMap<>();
+		Queue<Node> queue = new ArrayDeque<>();
+		index.put(start, builder.addState(this.typeOf(start.subset)));
+		queue.add(start);
+		List<Integer> finals = new ArrayList<>();
+		while (!queue.isEmpty()) {
+			Node current = queue.poll();
+			int source = index.get(current);
+			if (Arrays.binarySearch(current.subset.states, this.nfa.end()) >= 0) finals.add(source);
+			for (int i = 0; i < current.symbols.length; i++) {
+				Node successor = current.successors[i];
+				Integer target = index.get(successor);
+				if (target == null) {
+					target = builder.addState(this.typeOf(successor.subset));
+					index.put(successor, target);
+					queue.add(successor);
+				}
+				builder.addEdge(source, current.symbols[i], target);
+			}
+		}
+		builder.setStart(0);
+		if (finals.size() > 1) {
+			// come GraphUtils.joinFinalStates: un nuovo stato finale raggiunto con una epsilon da tutti
+			int end = builder.addState(StateType.NORMAL);
+			finals.forEach(state -> builder.addEdge(state, null, end));
+			builder.setEnd(end);
+		} else builder.setEnd(finals.isEmpty() ? 0 : finals.get(0));
+		return builder.build();
+	}
+
+	private StateType typeOf(Subset subset) {
+		boolean fault = false, end = false, exit = false;
+		for (int s : subset.states) {
+			StateType type = this.nfa.type(s);
+			fault |= type == StateType.FAULT;
+			end |= type == StateType.END;
+			exit |= type == StateType.EXIT;
+		}
+		if (exit) return StateType.EXIT;
+		if (end) return StateType.END;
+		return fault ? StateType.FAULT : StateType.NORMAL;
+	}
+
+	private static final class Subset {
+		private final int[] states;
+		private final int hash;
+
+		private Subset(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Subset other && this.hash == other.hash && Arrays.equals(this.states, other.states);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	private static final class Node {
+		private final Subset subset;
+		private volatile String[] symbols;
+		private volatile Node[] successors;
+
+		private Node(Subset subset) {
+			this.subset = subset;
+		}
+	}
+
+	private final class Expansion extends CountedCompleter<Void> {
+		private final Node node;
+
+		private Expansion(CountedCompleter<?> parent, Node node) {
+			super(parent);
+			this.node = node;
+		}
+
+		@Override
+		public void compute() {
+			if (ParallelDeterminizer.this.aborted) {
+				this.tryComplete();
+				return;
+			}
+			for (Node successor : ParallelDeterminizer.this.expand(this.node)) {
+				this.addToPendingCount(1);
+				new Expansion(this, successor).fork();
+			}
+			this.tryComplete();
+		}
+	}
+}
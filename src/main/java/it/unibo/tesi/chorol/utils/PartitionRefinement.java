@@ -0,0 +1,193 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Raffinamento di partizioni alla Paige–Tarjan: la partizione iniziale viene raffinata finché ogni blocco
+ * è stabile rispetto a ogni altro blocco, cioè finché i suoi stati raggiungono con ogni etichetta gli stessi blocchi.
+ * Il risultato è la bisimulazione forte più grossolana compatibile con la partizione iniziale;
+ * su un DFA il quoziente è la minimizzazione.
+ */
+final class PartitionRefinement {
+	private final CompactGraph graph;
+	// stati raggruppati per blocco: il blocco b occupa elements[first[b], end[b]), i marcati stanno in [first[b], mid[b])
+	private final int[] elements;
+	private final int[] location;
+	private final int[] blockOf;
+	private int[] first;
+	private int[] mid;
+	private int[] end;
+	private boolean[] pending;
+	private int blocks;
+	// archi entranti per destinazione
+	private final int[] inOffsets;
+	private final int[] inEdges;
+	private final int[] edgeSource;
+
+	private PartitionRefinement(CompactGraph graph, int[] initial) {
+		this.graph = graph;
+		int n = graph.size();
+		this.elements = new int[n];
+		this.location = new int[n];
+		this.blockOf = PartitionRefinement.normalize(initial);
+		this.blocks = Arrays.stream(this.blockOf).max().orElse(-1) + 1;
+		this.first = new int[Math.max(this.blocks, 1)];
+		this.mid = new int[this.first.length];
+		this.end = new int[this.first.length];
+		this.pending = new boolean[this.first.length];
+		int offset = 0;
+		int[] size = new int[this.blocks];
+		for (int s = 0; s < n; s++) size[this.blockOf[s]]++;
+		for (int b = 0; b < this.blocks; b++) {
+			this.first[b] = offset;
+			this.mid[b] = offset;
+			offset += size[b];
+			this.end[b] = offset;
+		}
+		int[] position = Arrays.copyOf(this.first, this.blocks);
+		for (int s = 0; s < n; s++) {
+			this.location[s] = position[this.blockOf[s]]++;
+			this.elements[this.location[s]] = s;
+		}
+
+		this.inOffsets = new int[n + 1];
+		for (int e = 0; e < graph.edgeCount(); e++) this.inOffsets[graph.target(e) + 1]++;
+		for (int s = 0; s < n; s++) this.inOffsets[s + 1] += this.inOffsets[s];
+		this.inEdges = new int[graph.edgeCount()];
+		this.edgeSource = new int[graph.edgeCount()];
+		int[] fill = Arrays.copyOf(this.inOffsets, n);
+		for (int s = 0; s < n; s++)
+			for (int e = graph.firstEdge(s); e < graph.lastEdge(s); e++) {
+				this.inEdges[fill[graph.target(e)]++] = e;
+				this.edgeSource[e] = s;
+			}
+	}
+
+	/**
+	 * Quoziente del grafo rispetto al raffinamento della partizione iniziale; gli stati del
+	 * risultato sono i blocchi, numerati nell'ordine del loro primo stato.
+	 */
+	static CompactGraph quotient(CompactGraph graph, int[] initial) {
+		int[] block = PartitionRefinement.refine(graph, initial);
+		CompactGraph.Builder builder = new CompactGraph.Builder();
+		int[] representative = new int[graph.size()];
+		int blocks = 0;
+		for (int s = 0; s < graph.size(); s++)
+			if (block[s] == blocks) representative[blocks++] = s;
+		for (int b = 0; b < blocks; b++) builder.addState(graph.type(representative[b]));
+		for (int s = 0; s < graph.size(); s++)
+			for (int e = graph.firstEdge(s); e < graph.lastEdge(s); e++)
+				builder.addEdge(block[s], graph.symbol(graph.label(e)), block[graph.target(e)]);
+		if (graph.size() > 0) {
+			builder.setStart(block[graph.start()]);
+			builder.setEnd(block[graph.end()]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Restituisce il blocco di ogni stato; i blocchi sono numerati nell'ordine del loro primo stato.
+	 */
+	static int[] refine(CompactGraph graph, int[] initial) {
+		PartitionRefinement refinement = new PartitionRefinement(graph, initial);
+		refinement.run();
+		return PartitionRefinement.normalize(refinement.blockOf);
+	}
+
+	/**
+	 * Ogni blocco nato da una divisione diventa a sua volta uno splitter: con archi non deterministici
+	 * il trucco di Hopcroft della metà più piccola non basta, quindi si rielaborano entrambe le parti.
+	 */
+	private void run() {
+		ArrayDeque<Integer> worklist = new ArrayDeque<>();
+		for (int b = 0; b < this.blocks; b++) {
+			worklist.add(b);
+			this.pending[b] = true;
+		}
+		long[] moves = new long[this.graph.edgeCount()];
+		int[] touched = new int[this.graph.size()];
+		while (!worklist.isEmpty()) {
+			int splitter = worklist.poll();
+			this.pending[splitter] = false;
+
+			// archi entranti nello splitter, ordinati per (etichetta, sorgente)
+			int k = 0;
+			for (int i = this.first[splitter]; i < this.end[splitter]; i++) {
+				int s = this.elements[i];
+				for (int j = this.inOffsets[s]; j < this.inOffsets[s + 1]; j++) {
+					int e = this.inEdges[j];
+					moves[k++] = ((long) (this.graph.label(e) + 1) << 32) | this.edgeSource[e];
+				}
+			}
+			Arrays.sort(moves, 0, k);
+
+			int i = 0;
+			while (i < k) {
+				int label = (int) (moves[i] >>> 32);
+				int count = 0;
+				for (; i < k && (int) (moves[i] >>> 32) == label; i++) {
+					int source = (int) moves[i];
+					if (i > 0 && moves[i] == moves[i - 1]) continue;
+					int b = this.blockOf[source];
+					if (this.mid[b] == this.first[b]) touched[count++] = b;
+					this.mark(source);
+				}
+				for (int t = 0; t < count; t++) this.split(touched[t], worklist);
+			}
+		}
+	}
+
+	private void mark(int state) {
+		int b = this.blockOf[state];
+		int position = this.location[state];
+		int target = this.mid[b]++;
+		int other = this.elements[target];
+		this.elements[target] = state;
+		this.location[state] = target;
+		this.elements[position] = other;
+		this.location[other] = position;
+	}
+
+	/**
+	 * Separa gli stati marcati di un blocco dagli altri, se non lo sono tutti.
+	 */
+	private void split(int b, ArrayDeque<Integer> worklist) {
+		if (this.mid[b] == this.end[b]) {
+			this.mid[b] = this.first[b];
+			return;
+		}
+		int created = this.blocks++;
+		if (created == this.first.length) {
+			int capacity = created * 2;
+			this.first = Arrays.copyOf(this.first, capacity);
+			this.mid = Arrays.copyOf(this.mid, capacity);
+			this.end = Arrays.copyOf(this.end, capacity);
+			this.pending = Arrays.copyOf(this.pending, capacity);
+		}
+		this.first[created] = this.first[b];
+		this.mid[created] = this.first[b];
+		this.end[created] = this.mid[b];
+		for (int i = this.first[created]; i < this.end[created]; i++) this.blockOf[this.elements[i]] = created;
+		this.first[b] = this.mid[b];
+		this.mid[b] = this.first[b];
+		if (!this.pending[b]) {
+			this.pending[b] = true;
+			worklist.add(b);
+		}
+		this.pending[created] = true;
+		worklist.add(created);
+	}
+
+	private static int[] normalize(int[] initial) {
+		Map<Integer, Integer> ids = new HashMap<>();
+		int[] block = new int[initial.length];
+		for (int s = 0; s < initial.length; s++)
+			block[s] = ids.computeIfAbsent(initial[s], key -> ids.size());
+		return block;
+	}
+}
@@ -0,0 +1,124 @@
+package it.unibo.tesi.chorol.utils;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.RequestEdge;
+import it.unibo.tesi.chorol.visitor.flow.graph.State;
+import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+
+import java.util.*;
+
+/**
+ * Potatura lineare degli stati inutili prima delle fasi costose di {@link GraphUtils}.
+ * In avanti si tengono gli stati raggiungibili dall'inizio; all'indietro si eliminano i vicoli ciechi,
+ * cioè gli stati da cui ogni cammino finisce in uno stato senza uscite che non è lo stato finale né
+ * END/EXIT/FAULT. Gli stati su un ciclo non diventano mai vicoli ciechi: descrivono comportamenti
+ * che non terminano e restano nel grafo.
+ */
+final class ReachabilityTrim {
+
+	private ReachabilityTrim() {
+	}
+
+	/**
+	 * Rimuove dal grafo gli stati irraggiungibili e, se {@code deadEnds}, i vicoli ciechi;
+	 * lo stato iniziale e quello finale restano sempre. Restituisce il numero di stati rimossi.
+	 */
+	static int trim(FlowGraph graph, boolean deadEnds) {
+		State startNode = graph.getStartNode();
+		if (startNode == null) return 0;
+		State[] states = graph.vertexSet().toArray(new State[0]);
+		int n = states.length;
+		Map<State, Integer> index = new HashMap<>(n * 2);
+		for (int s = 0; s < n; s++) index.put(states[s], s);
+		int m = graph.edgeSet().size();
+		int[] sources = new int[m];
+		int[] targets = new int[m];
+		int e = 0;
+		for (RequestEdge edge : graph.edgeSet()) {
+			sources[e] = index.get(graph.getEdgeSource(edge));
+			targets[e++] = index.get(graph.getEdgeTarget(edge));
+		}
+		int start = index.get(startNode);
+		int end = index.get(graph.getEndNode());
+
+		BitSet keep = ReachabilityTrim.reachable(ReachabilityTrim.adjacency(sources, targets, n), start);
+		if (deadEnds) keep.andNot(ReachabilityTrim.deadEnds(states, sources, targets, start, end));
+		keep.set(start);
+		keep.set(end);
+		if (keep.cardinality() == n) return 0;
+
+		List<State> removed = new ArrayList<>(n - keep.cardinality());
+		for (int s = keep.nextClearBit(0); s < n; s = keep.nextClearBit(s + 1)) removed.add(states[s]);
+		graph.removeAllVertices(removed);
+		return removed.size();
+	}
+
+	private static Csr adjacency(int[] from, int[] to, int n) {
+		int[] offsets = new int[n + 1];
+		for (int source : from) offsets[source + 1]++;
+		for (int s = 0; s < n; s++) offsets[s + 1] += offsets[s];
+		int[] adjacent = new int[from.length];
+		int[] fill = Arrays.copyOf(offsets, n);
+		for (int e = 0; e < from.length; e++) adjacent[fill[from[e]]++] = to[e];
+		return new Csr(offsets, adjacent);
+	}
+
+	private static BitSet reachable(Csr successors, int start) {
+		int n = successors.offsets().length - 1;
+		BitSet visited = new BitSet(n);
+		int[] worklist = new int[n];
+		int top = 0;
+		visited.set(start);
+		worklist[top++] = start;
+		while (top > 0) {
+			int s = worklist[--top];
+			for (int i = successors.offsets()[s]; i < successors.offsets()[s + 1]; i++) {
+				int t = successors.adjacent()[i];
+				if (visited.get(t)) continue;
+				visited.set(t);
+				worklist[top++] = t;
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Vicoli ciechi, trovati togliendo a ritroso gli stati senza uscite come in un ordinamento topologico.
+	 */
+	private static BitSet deadEnds(State[] states, int[] sources, int[] targets, int start, int end) {
+		int n = states.length;
+		Csr predecessors = ReachabilityTrim.adjacency(targets, sources, n);
+		int[] outDegree = new int[n];
+		for (int source : sources) outDegree[source]++;
+		BitSet dead = new BitSet(n);
+		int[] worklist = new int[n];
+		int top = 0;
+		for (int s = 0; s < n; s++)
+			if (outDegree[s] == 0 && ReachabilityTrim.removable(states[s], s, start, end)) {
+				dead.set(s);
+				worklist[top++] = s;
+			}
+		while (top > 0) {
+			int s = worklist[--top];
+			for (int i = predecessors.offsets()[s]; i < predecessors.offsets()[s + 1]; i++) {
+				int p = predecessors.adjacent()[i];
+				if (--outDegree[p] == 0 && !dead.get(p) && ReachabilityTrim.removable(states[p], p, start, end)) {
+					dead.set(p);
+					worklist[top++] = p;
+				}
+			}
+		}
+		return dead;
+	}
+
+	private static boolean removable(State state, int s, int start, int end) {
+		StateType type = state.getStateType();
+		return s != start && s != end && type != StateType.END && type != StateType.EXIT && type != StateType.FAULT;
+	}
+
+	/**
+	 * Lista di adiacenza compressa: gli adiacenti di s sono {@code adjacent[offsets[s] .. offsets[s + 1])}.
+	 */
+	private record Csr(int[] offsets, int[] adjacent) {
+	}
+}
@@ -0,0 +1,41 @@
+package it.unibo.tesi.chorol.utils;
+
+/**
+ * Insieme degli stati (vettori di interi di lunghezza fissa) raggiunti da un'esplorazione in ampiezza,
+ * numerati in ordine di inserimento: gli stati ancora da espandere sono sempre quelli con indice
+ * successivo a quello corrente, quindi la frontiera non richiede una coda a parte.
+ */
+interface StateStore extends AutoCloseable {
+
+	/**
+	 * Store per vettori lunghi {@code width}: fuori dallo heap se è configurata una cartella
+	 * (vedi {@link MappedStateStore}), altrimenti in memoria.
+	 */
+	static StateStore create(int width) {
+		return AnalysisSettings.getStateStoreDirectory() != null
+				       ? new MappedStateStore(AnalysisSettings.getStateStoreDirectory(), width)
+				       : new HeapStateStore();
+	}
+
+	/**
+	 * Indice del vettore, aggiungendolo in fondo se non è ancora presente.
+	 */
+	int put(int[] vector);
+
+	/**
+	 * Indice del vettore, -1 se non è presente.
+	 */
+	int find(int[] vector);
+
+	int[] get(int index);
+
+	int size();
+
+	/**
+	 * Costo stimato, in byte, di ogni elemento di un vettore sullo heap, per {@link DeterminizationBudget}.
+	 */
+	long bytesPerElement();
+
+	@Override
+	void close();
+}
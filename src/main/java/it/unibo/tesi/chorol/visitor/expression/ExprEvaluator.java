@@ -0,0 +1,162 @@
+package it.unibo.tesi.chorol.visitor.expression;
+
+import jolie.lang.Constants;
+import jolie.lang.parse.ast.CompareConditionNode;
+import jolie.lang.parse.ast.OLSyntaxNode;
+import jolie.lang.parse.ast.expression.*;
+import jolie.util.Pair;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Valutazione delle espressioni costanti sugli stessi nodi stampati da {@link ExprVisitor}.
+ * I valori sono Long (int e long), Double, Boolean o String; null indica un valore non noto,
+ * e la logica delle condizioni è a tre valori.
+ */
+public final class ExprEvaluator {
+
+	private ExprEvaluator() {
+	}
+
+	/**
+	 * Valore dell'espressione, leggendo le variabili da {@code variables}; null se non è una costante.
+	 */
+	public static Object evaluate(OLSyntaxNode node, Function<String, Object> variables) {
+		if (node instanceof ConstantIntegerExpression n) return (long) n.value();
+		if (node instanceof ConstantLongExpression n) return n.value();
+		if (node instanceof ConstantDoubleExpression n) return n.value();
+		if (node instanceof ConstantBoolExpression n) return n.value();
+		if (node instanceof ConstantStringExpression n) return n.value();
+		if (node instanceof VariableExpressionNode n) return variables.apply(n.variablePath().toPrettyString());
+		if (node instanceof NotExpressionNode n)
+			return ExprEvaluator.evaluate(n.expression(), variables) instanceof Boolean b ? !b : null;
+		if (node instanceof OrConditionNode n) return ExprEvaluator.junction(n.children(), variables, true);
+		if (node instanceof AndConditionNode n) return ExprEvaluator.junction(n.children(), variables, false);
+		if (node instanceof CompareConditionNode n)
+			return ExprEvaluator.compare(n,
+					ExprEvaluator.evaluate(n.leftExpression(), variables),
+					ExprEvaluator.evaluate(n.rightExpression(), variables));
+		if (node instanceof SumExpressionNode n) return ExprEvaluator.fold(n.operands(), variables);
+		if (node instanceof ProductExpressionNode n) return ExprEvaluator.fold(n.operands(), variables);
+		return null;
+	}
+
+	/**
+	 * Applica un operatore aritmetico; null se un operando non è noto o l'operazione non è definita.
+	 */
+	public static Object apply(Constants.OperandType operand, Object left, Object right) {
+		if (left == null || right == null) return null;
+		if (operand == Constants.OperandType.ADD && left instanceof String s)
+			return right instanceof String || right instanceof Long || right instanceof Boolean ? s + right : null;
+		if (left instanceof Long a && right instanceof Long b) return switch (operand) {
+			case ADD -> a + b;
+			case SUBTRACT -> a - b;
+			case MULTIPLY -> a * b;
+			case DIVIDE -> b == 0 ? null : a / b;
+			case MODULUS -> b == 0 ? null : a % b;
+		};
+		if (left instanceof Number a && right instanceof Number b && (a instanceof Double || b instanceof Double))
+			return switch (operand) {
+				case ADD -> a.doubleValue() + b.doubleValue();
+				case SUBTRACT -> a.doubleValue() - b.doubleValue();
+				case MULTIPLY -> a.doubleValue() * b.doubleValue();
+				case DIVIDE -> a.doubleValue() / b.doubleValue();
+				case MODULUS -> a.doubleValue() % b.doubleValue();
+			};
+		return null;
+	}
+
+	/**
+	 * Forma canonica dell'espressione, senza perdita di informazione sui nodi valutabili;
+	 * gli altri nodi diventano "?", perché il loro valore non è mai noto.
+	 */
+	public static String describe(OLSyntaxNode node) {
+		if (node instanceof ConstantIntegerExpression n) return "i" + n.value();
+		if (node instanceof ConstantLongExpression n) return "l" + n.value();
+		if (node instanceof ConstantDoubleExpression n) return "d" + n.value();
+		if (node instanceof ConstantBoolExpression n) return "b" + n.value();
+		if (node instanceof ConstantStringExpression n) return "s" + n.value().length() + ":" + n.value();
+		if (node instanceof VariableExpressionNode n) {
+			String path = n.variablePath().toPrettyString();
+			return "v" + path.length() + ":" + path;
+		}
+		if (node instanceof NotExpressionNode n) return "!(" + ExprEvaluator.describe(n.expression()) + ")";
+		if (node instanceof OrConditionNode n) return ExprEvaluator.describe("or", n.children());
+		if (node instanceof AndConditionNode n) return ExprEvaluator.describe("and", n.children());
+		if (node instanceof CompareConditionNode n)
+			return ExprVisitorBase.compare2String(n.opType()) + "(" + ExprEvaluator.describe(n.leftExpression()) + "," +
+					       ExprEvaluator.describe(n.rightExpression()) + ")";
+		if (node instanceof SumExpressionNode n) return ExprEvaluator.describeOperands("sum", n.operands());
+		if (node instanceof ProductExpressionNode n) return ExprEvaluator.describeOperands("prod", n.operands());
+		return "?";
+	}
+
+	/**
+	 * Valore in forma canonica, distinguendo i tipi (1 e "1" sono diversi).
+	 */
+	public static String describeValue(Object value) {
+		if (value instanceof Long l) return "l" + l;
+		if (value instanceof Double d) return "d" + d;
+		if (value instanceof Boolean b) return "b" + b;
+		if (value instanceof String s) return "s" + s.length() + ":" + s;
+		return "?";
+	}
+
+	private static Boolean junction(List<OLSyntaxNode> children, Function<String, Object> variables, boolean or) {
+		boolean unknown = false;
+		for (OLSyntaxNode child : children) {
+			Object value = ExprEvaluator.evaluate(child, variables);
+			if (!(value instanceof Boolean b)) unknown = true;
+			else if (b == or) return or;
+		}
+		return unknown ? null : !or;
+	}
+
+	private static Object fold(List<Pair<Constants.OperandType, OLSyntaxNode>> operands, Function<String, Object> variables) {
+		Object result = null;
+		boolean first = true;
+		for (Pair<Constants.OperandType, OLSyntaxNode> operand : operands) {
+			Object value = ExprEvaluator.evaluate(operand.value(), variables);
+			if (value == null) return null;
+			if (first) {
+				result = operand.key() == Constants.OperandType.SUBTRACT ? ExprEvaluator.apply(operand.key(), 0L, value) : value;
+				first = false;
+			} else result = ExprEvaluator.apply(operand.key(), result, value);
+			if (result == null) return null;
+		}
+		return result;
+	}
+
+	private static Boolean compare(CompareConditionNode node, Object left, Object right) {
+		if (left == null || right == null) return null;
+		int order;
+		if (left instanceof Long a && right instanceof Long b) order = Long.compare(a, b);
+		else if (left instanceof Number a && right instanceof Number b) order = Double.compare(a.doubleValue(), b.doubleValue());
+		else if (left instanceof String a && right instanceof String b) order = a.compareTo(b);
+		else if (left instanceof Boolean a && right instanceof Boolean b) order = a.compareTo(b);
+		else return null;
+		return switch (node.opType()) {
+			case EQUAL -> order == 0;
+			case NOT_EQUAL -> order != 0;
+			case LANGLE -> order < 0;
+			case RANGLE -> order > 0;
+			case MINOR_OR_EQUAL -> order <= 0;
+			case MAJOR_OR_EQUAL -> order >= 0;
+			default -> null;
+		};
+	}
+
+	private static String describe(String head, List<OLSyntaxNode> children) {
+		StringBuilder key = new StringBuilder(head).append('(');
+		children.forEach(child -> key.append(ExprEvaluator.describe(child)).append(','));
+		return key.append(')').toString();
+	}
+
+	private static String describeOperands(String head, List<Pair<Constants.OperandType, OLSyntaxNode>> operands) {
+		StringBuilder key = new StringBuilder(head).append('(');
+		operands.forEach(operand -> key.append(ExprVisitorBase.operand2String(operand.key()))
+				                            .append(ExprEvaluator.describe(operand.value())).append(','));
+		return key.append(')').toString();
+	}
+}
@@ -0,0 +1,97 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import jolie.lang.parse.ast.*;
+import jolie.util.Pair;
+
+import java.util.*;
+
+/**
+ * Percorsi che un sottoalbero può scrivere, usati per invalidare le costanti prima di cicli e rami paralleli.
+ * null indica che il sottoalbero può scrivere percorsi non determinabili (alias, nodi non gestiti, ricorsione).
+ */
+final class AssignedVariables {
+	private final Map<String, DefinitionNode> definitions;
+	private final Map<OLSyntaxNode, Set<String>> cache = new IdentityHashMap<>();
+	private final Set<String> calling = new HashSet<>();
+
+	AssignedVariables(Map<String, DefinitionNode> definitions) {
+		this.definitions = definitions;
+	}
+
+	Set<String> of(OLSyntaxNode node) {
+		if (node == null) return Set.of();
+		if (this.cache.containsKey(node)) return this.cache.get(node);
+		Set<String> paths = this.compute(node);
+		this.cache.put(node, paths);
+		return paths;
+	}
+
+	void clear() {
+		this.cache.clear();
+		this.calling.clear();
+	}
+
+	private Set<String> compute(OLSyntaxNode node) {
+		Set<String> paths = new HashSet<>();
+		List<OLSyntaxNode> children = new ArrayList<>();
+		if (node instanceof AssignStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof AddAssignStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof SubtractAssignStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof MultiplyAssignStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof DivideAssignStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof PreIncrementStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof PostIncrementStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof PreDecrementStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof PostDecrementStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof UndefStatement n) AssignedVariables.add(paths, n.variablePath());
+		else if (node instanceof DeepCopyStatement n) AssignedVariables.add(paths, n.leftPath());
+		else if (node instanceof OneWayOperationStatement n) AssignedVariables.add(paths, n.inputVarPath());
+		else if (node instanceof SolicitResponseOperationStatement n) AssignedVariables.add(paths, n.inputVarPath());
+		else if (node instanceof SpawnStatement n) AssignedVariables.add(paths, n.inVariablePath());
+		else if (node instanceof RequestResponseOperationStatement n) {
+			AssignedVariables.add(paths, n.inputVarPath());
+			children.add(n.process());
+		} else if (node instanceof SequenceStatement n) children.addAll(n.children());
+		else if (node instanceof ParallelStatement n) children.addAll(n.children());
+		else if (node instanceof NDChoiceStatement n) n.children().forEach(child -> {
+			children.add(child.key());
+			children.add(child.value());
+		});
+		else if (node instanceof IfStatement n) {
+			n.children().stream().map(Pair::value).forEach(children::add);
+			children.add(n.elseProcess());
+		} else if (node instanceof WhileStatement n) children.add(n.body());
+		else if (node instanceof ForStatement n) children.addAll(Arrays.asList(n.init(), n.post(), n.body()));
+		else if (node instanceof ForEachArrayItemStatement n) {
+			AssignedVariables.add(paths, n.keyPath());
+			children.add(n.body());
+		} else if (node instanceof ForEachSubNodeStatement n) {
+			AssignedVariables.add(paths, n.keyPath());
+			children.add(n.body());
+		} else if (node instanceof SynchronizedStatement n) children.add(n.body());
+		else if (node instanceof Scope n) children.add(n.body());
+		else if (node instanceof InstallStatement n)
+			Arrays.stream(n.handlersFunction().pairs()).map(Pair::value).forEach(children::add);
+		else if (node instanceof DefinitionCallStatement n) {
+			DefinitionNode definition = this.definitions.get(n.id());
+			if (definition == null) return paths;
+			if (!this.calling.add(n.id())) return null;
+			Set<String> body = this.of(definition.body());
+			this.calling.remove(n.id());
+			return body;
+		} else if (!(node instanceof NullProcessStatement || node instanceof ExitStatement ||
+				             node instanceof ThrowStatement || node instanceof NotificationOperationStatement))
+			return null;
+
+		for (OLSyntaxNode child : children) {
+			Set<String> written = this.of(child);
+			if (written == null) return null;
+			paths.addAll(written);
+		}
+		return paths;
+	}
+
+	private static void add(Set<String> paths, VariablePathNode path) {
+		if (path != null) paths.add(path.toPrettyString());
+	}
+}
@@ -0,0 +1,241 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import it.unibo.tesi.chorol.symbols.services.Service;
+import it.unibo.tesi.chorol.utils.AnalysisSettings;
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Automi minimizzati dei servizi già analizzati, condivisi da tutti i punti che li incorporano.
+ * La chiave è il nome del servizio, la versione dell'analizzatore, lo SHA-256 del suo sorgente e dei file che importa,
+ * transitivamente, più le impostazioni che cambiano il grafo: modificare un file o aggiornare l'analizzatore invalida
+ * il risultato senza bisogno di svuotare la cache. I file compaiono con il percorso relativo alla cartella del servizio,
+ * così checkout in cartelle diverse (ad esempio su macchine di CI) condividono le voci. Con una cartella configurata gli automi sopravvivono anche tra esecuzioni diverse
+ * (vedi {@link AutomatonStore}). I grafi sono salvati in forma compatta e canonica, una volta per impronta,
+ * e ogni richiesta riceve una copia con stati nuovi. In memoria ogni mappa di grafi occupa al più {@code MAX_BYTES}
+ * secondo {@link CompactGraph#bytes()}, scartando le voci meno usate di recente, così un'esecuzione su molti
+ * servizi, anche grandi, non cresce senza limite; una voce scartata resta nella cache su disco, se configurata.
+ */
+public final class AutomatonCache {
+	private static final Logger logger = LoggerFactory.getLogger(AutomatonCache.class);
+	private static final int MAX_ENTRIES = 4096;
+	// un ottavo dello heap per mappa di grafi: in batch vale anche per ogni worker con il suo -Xmx
+	private static final long MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;
+	private static final String VERSION = AutomatonCache.implementationVersion();
+	private static final GraphLru graphs = new GraphLru();
+	// digest per file, finché dimensione e data di modifica non cambiano
+	private static final Map<String, String> digests = AutomatonCache.lru();
+	// una sola copia per protocollo, anche se condiviso da servizi o versioni diverse;
+	// un protocollo scartato qui resta valido per le voci che lo usano, si perde solo la condivisione
+	private static final GraphLru protocols = new GraphLru();
+	private static final AtomicInteger hits = new AtomicInteger();
+	private static final AtomicInteger diskHits = new AtomicInteger();
+	private static final AtomicInteger misses = new AtomicInteger();
+
+	private AutomatonCache() {
+	}
+
+	/**
+	 * Automa del servizio, calcolato con {@code analysis} solo se non è già in cache.
+	 * {@code sources} sono i file da cui dipende il servizio; se uno non si può leggere il risultato non viene salvato.
+	 */
+	public static FlowGraph get(Service service, Collection<Path> sources, Supplier<FlowGraph> analysis) {
+		String key = AutomatonCache.keyOf(service, sources);
+		CompactGraph graph = key == null ? null : AutomatonCache.graphs.get(key);
+		if (graph != null) {
+			AutomatonCache.hits.incrementAndGet();
+			return AutomatonCache.instantiate(graph);
+		}
+		AutomatonStore store = AutomatonCache.store();
+		String digest = key == null || store == null ? null : AutomatonCache.sha256(key.getBytes(StandardCharsets.UTF_8));
+		graph = digest == null ? null : store.load(key, digest);
+		if (graph != null) {
+			graph = AutomatonCache.intern(graph);
+			AutomatonCache.diskHits.incrementAndGet();
+			AutomatonCache.graphs.put(key, graph);
+			return AutomatonCache.instantiate(graph);
+		}
+
+		AutomatonCache.misses.incrementAndGet();
+		FlowGraph result = analysis.get();
+		if (key != null && result != null) {
+			graph = AutomatonCache.intern(CompactGraph.of(result).canonical());
+			AutomatonCache.graphs.put(key, graph);
+			if (digest != null) store.save(key, digest, graph);
+		}
+		return result;
+	}
+
+	/**
+	 * Chiave del servizio, null se un sorgente non si può leggere.
+	 */
+	static String keyOf(Service service, Collection<Path> sources) {
+		if (sources.isEmpty()) return null;
+		Path root = service.getSource() == null ? null : Paths.get(service.getSource()).toAbsolutePath().normalize().getParent();
+		SortedSet<String> files = new TreeSet<>();
+		for (Path source : sources) {
+			String digest = AutomatonCache.digest(source);
+			if (digest == null) return null;
+			files.add(AutomatonCache.relative(root, source) + '#' + digest);
+		}
+		return service.name() + '|' + AutomatonCache.VERSION + '|' + AnalysisSettings.fingerprint() + '|' + String.join("|", files);
+	}
+
+	private static String relative(Path root, Path source) {
+		Path file = source.toAbsolutePath().normalize();
+		try {
+			return (root == null ? file : root.relativize(file)).toString().replace(File.separatorChar, '/');
+		} catch (IllegalArgumentException e) {
+			// su un'altra radice del file system
+			return file.toString();
+		}
+	}
+
+	/**
+	 * SHA-256 del jar che contiene l'analizzatore; eseguendo dalle classi compilate, la versione del manifest o "dev".
+	 */
+	private static String implementationVersion() {
+		try {
+			Path code = Paths.get(AutomatonCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if (Files.isRegularFile(code)) {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				try (InputStream in = Files.newInputStream(code)) {
+					byte[] buffer = new byte[1 << 16];
+					for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) digest.update(buffer, 0, read);
+				}
+				return String.format("%064x", new BigInteger(1, digest.digest()));
+			}
+		} catch (IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+			AutomatonCache.logger.debug("Cannot hash the analyzer: {}", e.toString());
+		}
+		String version = AutomatonCache.class.getPackage().getImplementationVersion();
+		return version == null ? "dev" : version;
+	}
+
+	private static AutomatonStore store() {
+		Path directory = AnalysisSettings.getCacheDirectory();
+		return directory == null ? null : new AutomatonStore(directory, AnalysisSettings.getMaxCacheSize());
+	}
+
+	public static int getHits() {
+		return AutomatonCache.hits.get();
+	}
+
+	public static int getDiskHits() {
+		return AutomatonCache.diskHits.get();
+	}
+
+	public static int getMisses() {
+		return AutomatonCache.misses.get();
+	}
+
+	public static void clear() {
+		AutomatonCache.graphs.clear();
+		AutomatonCache.protocols.clear();
+		AutomatonCache.digests.clear();
+	}
+
+	private static <V> Map<String, V> lru() {
+		return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return this.size() > AutomatonCache.MAX_ENTRIES;
+			}
+		});
+	}
+
+	private static CompactGraph intern(CompactGraph graph) {
+		return AutomatonCache.protocols.putIfAbsent(graph.fingerprint(), graph);
+	}
+
+	private static FlowGraph instantiate(CompactGraph graph) {
+		FlowGraph flowGraph = graph.toFlowGraph();
+		flowGraph.relabelNodesBFS();
+		return flowGraph;
+	}
+
+	private static String digest(Path file) {
+		try {
+			String stamp = file + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis();
+			String digest = AutomatonCache.digests.get(stamp);
+			if (digest == null) {
+				digest = AutomatonCache.sha256(Files.readAllBytes(file));
+				AutomatonCache.digests.put(stamp, digest);
+			}
+			return digest;
+		} catch (IOException e) {
+			AutomatonCache.logger.debug("Cannot hash {}: {}", file, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Mappa LRU di grafi limitata dalla loro dimensione stimata invece che dal numero di voci.
+	 */
+	private static final class GraphLru {
+		private final LinkedHashMap<String, CompactGraph> map = new LinkedHashMap<>(16, 0.75f, true);
+		private long bytes;
+
+		synchronized CompactGraph get(String key) {
+			return this.map.get(key);
+		}
+
+		synchronized void put(String key, CompactGraph graph) {
+			CompactGraph previous = this.map.put(key, graph);
+			if (previous != null) this.bytes -= previous.bytes();
+			this.bytes += graph.bytes();
+			// anche la voce appena inserita, se da sola supera il limite
+			Iterator<CompactGraph> eldest = this.map.values().iterator();
+			while (this.bytes > AutomatonCache.MAX_BYTES && eldest.hasNext()) {
+				this.bytes -= eldest.next().bytes();
+				eldest.remove();
+			}
+		}
+
+		/**
+		 * Grafo già presente con la chiave, altrimenti {@code graph}, che viene inserito.
+		 */
+		synchronized CompactGraph putIfAbsent(String key, CompactGraph graph) {
+			CompactGraph existing = this.map.get(key);
+			if (existing != null) return existing;
+			this.put(key, graph);
+			return graph;
+		}
+
+		synchronized void clear() {
+			this.map.clear();
+			this.bytes = 0;
+		}
+	}
+
+	private static String sha256(byte[] bytes) {
+		try {
+			return String.format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(bytes)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
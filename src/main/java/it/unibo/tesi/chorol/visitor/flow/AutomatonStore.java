@@ -0,0 +1,119 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Cache su disco degli automi minimizzati, indirizzata per contenuto: il nome di ogni file è lo SHA-256
+ * della chiave, che viene ripetuta nell'intestazione e confrontata in lettura.
+ * I file vengono scritti in un file temporaneo e spostati al loro posto, così un lettore concorrente
+ * vede l'automa intero o nessun automa; oltre la dimensione massima si eliminano i file usati meno
+ * di recente, con la data di modifica aggiornata a ogni lettura.
+ */
+final class AutomatonStore {
+	private static final Logger logger = LoggerFactory.getLogger(AutomatonStore.class);
+	private static final int MAGIC = 0x43484f4c;
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".graph";
+
+	private final Path directory;
+	private final long maxSize;
+
+	AutomatonStore(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Automa salvato con la chiave indicata, null se manca o non è leggibile (in tal caso il file viene rimosso).
+	 */
+	CompactGraph load(String key, String digest) {
+		Path file = this.directory.resolve(digest + AutomatonStore.SUFFIX);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != AutomatonStore.MAGIC || in.readInt() != AutomatonStore.VERSION) throw new IOException("Unknown format");
+			byte[] stored = new byte[in.readInt()];
+			in.readFully(stored);
+			if (!key.equals(new String(stored, StandardCharsets.UTF_8))) return null;
+			CompactGraph graph = CompactGraph.read(in);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return graph;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			AutomatonStore.logger.warn("Discarding cache entry {}: {}", file, e.toString());
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException ignored) {
+			}
+			return null;
+		}
+	}
+
+	void save(String key, String digest, CompactGraph graph) {
+		Path temp = null;
+		try {
+			Files.createDirectories(this.directory);
+			temp = Files.createTempFile(this.directory, digest, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(AutomatonStore.MAGIC);
+				out.writeInt(AutomatonStore.VERSION);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				graph.write(out);
+			}
+			Path file = this.directory.resolve(digest + AutomatonStore.SUFFIX);
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			this.evict();
+		} catch (IOException e) {
+			AutomatonStore.logger.warn("Cannot write cache entry in {}: {}", this.directory, e.getMessage());
+			if (temp != null) try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Elimina i file usati meno di recente finché la cache non rientra nella dimensione massima.
+	 */
+	private void evict() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> entries = Files.list(this.directory)) {
+			entries.filter(file -> file.getFileName().toString().endsWith(AutomatonStore.SUFFIX)).forEach(files::add);
+		}
+		long total = 0;
+		List<Entry> entries = new ArrayList<>();
+		for (Path file : files)
+			try {
+				Entry entry = new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+				entries.add(entry);
+				total += entry.size();
+			} catch (NoSuchFileException ignored) {
+				// eliminato nel frattempo da un altro processo
+			}
+		if (total <= this.maxSize) return;
+		entries.sort(Comparator.comparingLong(Entry::used));
+		for (Entry entry : entries) {
+			if (total <= this.maxSize) break;
+			if (Files.deleteIfExists(entry.file())) total -= entry.size();
+		}
+	}
+
+	private record Entry(Path file, long size, long used) {
+	}
+}
@@ -0,0 +1,238 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import it.unibo.tesi.chorol.symbols.SymbolManager;
+import it.unibo.tesi.chorol.utils.HeapUsage;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import jolie.lang.parse.ast.Program;
+import jolie.lang.parse.ast.ServiceNode;
+import jolie.lang.parse.util.impl.ProgramInspectorCreatorVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static it.unibo.tesi.chorol.utils.Misc.loadProgram;
+
+/**
+ * Analisi in streaming di una sequenza di programmi (.ol). Tre stadi collegati da code limitate:
+ * il parser carica simboli e AST di un file alla volta, gli analizzatori costruiscono e minimizzano gli automi
+ * dei suoi servizi, lo scrittore li passa a un {@link Sink}, ad esempio l'export DOT di {@link #dot}.
+ * Quando una coda è piena lo stadio precedente si ferma, quindi in memoria ci sono al più
+ * {@code QUEUE_CAPACITY} elementi per coda più quelli in lavorazione, qualunque sia il numero di servizi;
+ * ogni servizio viene rilasciato appena scritto, e le tabelle dei tipi ripartono a ogni file (vedi {@link SymbolManager}).
+ * Restano condivise solo le cache di {@link AutomatonCache}, limitate dalla dimensione stimata dei grafi
+ * e non dal numero di voci. Gli errori su un file vengono riportati
+ * senza fermare gli altri.
+ */
+public final class BatchPipeline {
+	private static final Logger logger = LoggerFactory.getLogger(BatchPipeline.class);
+	private static final int QUEUE_CAPACITY = 2;
+	private static final Parsed PARSED_END = new Parsed(null, null, null, null);
+	private static final Analyzed ANALYZED_END = new Analyzed(null, false, null, null, null);
+
+	private final Source source;
+	private final Sink sink;
+	private final int workers;
+
+	public BatchPipeline(Source source, Sink sink, int workers) {
+		if (workers < 1) throw new IllegalArgumentException("The number of workers must be positive");
+		this.source = source;
+		this.sink = sink;
+		this.workers = workers;
+	}
+
+	/**
+	 * Tutti i file .ol sotto {@code input}, in ordine di visita.
+	 */
+	public static Source tree(Path input) {
+		return () -> Files.walk(input).filter(Files::isRegularFile).filter(file -> file.toString().endsWith(".ol"));
+	}
+
+	/**
+	 * Export in DOT: il file di ogni servizio è il percorso del sorgente relativo a {@code input}, senza
+	 * estensione, seguito dal nome del servizio, sotto {@code output}. Non ha stato, quindi si può usare da più thread.
+	 * I percorsi sono confrontati in forma assoluta, così {@code input} relativo funziona anche con i file
+	 * assoluti restituiti dai worker di {@link ShardCoordinator}.
+	 */
+	public static Sink dot(Path input, Path output) {
+		Path root = input.toAbsolutePath().normalize();
+		return (file, service, graph) -> {
+			String relative = root.relativize(file.toAbsolutePath().normalize()).toString();
+			if (relative.isEmpty()) relative = file.getFileName().toString();
+			relative = relative.substring(0, relative.length() - ".ol".length());
+			Path target = output.resolve(relative + "." + service + ".dot");
+			Files.createDirectories(target.getParent());
+			try (Writer writer = Files.newBufferedWriter(target)) {
+				FlowController.export(graph, writer);
+			}
+		};
+	}
+
+	public Report run() throws IOException {
+		BlockingQueue<Parsed> parsed = new ArrayBlockingQueue<>(BatchPipeline.QUEUE_CAPACITY);
+		BlockingQueue<Analyzed> analyzed = new ArrayBlockingQueue<>(BatchPipeline.QUEUE_CAPACITY);
+		ExecutorService executor = Executors.newFixedThreadPool(this.workers + 2);
+		CompletionService<Report> stages = new ExecutorCompletionService<>(executor);
+		HeapUsage.resetPeak();
+		int cacheHits = AutomatonCache.getHits() + AutomatonCache.getDiskHits(), cacheMisses = AutomatonCache.getMisses();
+		try {
+			stages.submit(() -> this.parse(parsed));
+			for (int worker = 0; worker < this.workers; worker++)
+				stages.submit(() -> this.analyze(parsed, analyzed));
+			stages.submit(() -> this.write(analyzed));
+			// il primo stadio che fallisce ferma gli altri, che altrimenti resterebbero bloccati sulle code
+			Report report = null;
+			for (int stage = 0; stage < this.workers + 2; stage++) {
+				Report result = stages.take().get();
+				if (result != null) report = result;
+			}
+			return new Report(report.files(), report.services(), report.skipped(), report.states(), report.edges(),
+					AutomatonCache.getHits() + AutomatonCache.getDiskHits() - cacheHits, AutomatonCache.getMisses() - cacheMisses,
+					report.peakHeap(), report.failures());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Batch analysis interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io) throw io;
+			throw new IOException("Batch analysis failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Report parse(BlockingQueue<Parsed> parsed) throws IOException, InterruptedException {
+		try (Stream<Path> files = this.source.open()) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				try {
+					SymbolManager symbolManager = new SymbolManager(file);
+					Program main = loadProgram(file.toUri());
+					parsed.put(main == null
+							           ? new Parsed(file, null, null, "could not load program")
+							           : new Parsed(file, symbolManager, main, null));
+				} catch (RuntimeException e) {
+					BatchPipeline.logger.debug("Cannot load {}", file, e);
+					parsed.put(new Parsed(file, null, null, String.valueOf(e)));
+				}
+			}
+		}
+		for (int worker = 0; worker < this.workers; worker++) parsed.put(BatchPipeline.PARSED_END);
+		return null;
+	}
+
+	private Report analyze(BlockingQueue<Parsed> parsed, BlockingQueue<Analyzed> analyzed) throws InterruptedException {
+		for (Parsed job = parsed.take(); job != BatchPipeline.PARSED_END; job = parsed.take()) {
+			if (job.error() != null) {
+				analyzed.put(new Analyzed(job.file(), true, null, null, job.error()));
+				continue;
+			}
+			FlowController flowController = new FlowController(job.symbolManager());
+			ServiceNode[] serviceNodes = new ProgramInspectorCreatorVisitor(job.main()).createInspector().getServiceNodes();
+			if (serviceNodes.length == 0) analyzed.put(new Analyzed(job.file(), true, null, null, null));
+			for (int i = 0; i < serviceNodes.length; i++) {
+				String service = serviceNodes[i].name();
+				try {
+					analyzed.put(new Analyzed(job.file(), i == 0, service, flowController.getFlowGraph(serviceNodes[i]), null));
+				} catch (RuntimeException e) {
+					BatchPipeline.logger.debug("Cannot analyze {} in {}", service, job.file(), e);
+					analyzed.put(new Analyzed(job.file(), i == 0, service, null, String.valueOf(e)));
+				}
+			}
+		}
+		analyzed.put(BatchPipeline.ANALYZED_END);
+		return null;
+	}
+
+	private Report write(BlockingQueue<Analyzed> analyzed) throws InterruptedException {
+		int files = 0, services = 0, skipped = 0;
+		long states = 0, edges = 0, peakHeap = 0;
+		List<String> failures = new ArrayList<>();
+		for (int ended = 0; ended < this.workers; ) {
+			Analyzed job = analyzed.take();
+			if (job == BatchPipeline.ANALYZED_END) {
+				ended++;
+				continue;
+			}
+			if (job.first()) files++;
+			if (job.error() != null) failures.add(job.file() + (job.service() == null ? "" : " " + job.service()) + ": " + job.error());
+			else if (job.graph() == null) skipped++;
+			else {
+				try {
+					this.sink.accept(job.file(), job.service(), job.graph());
+					services++;
+					states += job.graph().vertexSet().size();
+					edges += job.graph().edgeSet().size();
+				} catch (IOException | RuntimeException e) {
+					failures.add(job.file() + " " + job.service() + ": " + e);
+				}
+			}
+			// il picco viene azzerato anche dal caricamento dei simboli: si tiene il massimo osservato
+			peakHeap = Math.max(peakHeap, HeapUsage.peak());
+		}
+		return new Report(files, services, skipped, states, edges, 0, 0, peakHeap, failures);
+	}
+
+	/**
+	 * Esito dell'esecuzione: file letti, servizi esportati, file senza servizi, dimensione complessiva
+	 * degli automi, automi trovati in cache e calcolati, massimo picco dello heap osservato
+	 * e un messaggio per ogni file o servizio non riuscito.
+	 */
+	public record Report(int files, int services, int skipped, long states, long edges, int cacheHits, int cacheMisses,
+	                     long peakHeap, List<String> failures) {
+
+		/**
+		 * Somma di due esiti di processi diversi; il picco dello heap è il massimo, perché ogni processo ha il suo.
+		 */
+		public Report merge(Report other) {
+			List<String> failures = new ArrayList<>(this.failures);
+			failures.addAll(other.failures);
+			return new Report(this.files + other.files, this.services + other.services, this.skipped + other.skipped,
+					this.states + other.states, this.edges + other.edges, this.cacheHits + other.cacheHits,
+					this.cacheMisses + other.cacheMisses, Math.max(this.peakHeap, other.peakHeap), failures);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files, %d services (%d states, %d edges), %d skipped, %d failures, " +
+					                     "cache %d hits %d misses, peak heap %.1f MB", this.files, this.services, this.states,
+					this.edges, this.skipped, this.failures.size(), this.cacheHits, this.cacheMisses, this.peakHeap / 1048576.0);
+		}
+	}
+
+	/**
+	 * Sequenza dei file da analizzare, aperta dallo stadio di parsing e chiusa al termine.
+	 */
+	@FunctionalInterface
+	public interface Source {
+		Stream<Path> open() throws IOException;
+	}
+
+	/**
+	 * Destinazione degli automi, chiamata dal solo stadio di scrittura; l'automa non viene più usato dopo la chiamata.
+	 */
+	@FunctionalInterface
+	public interface Sink {
+		void accept(Path file, String service, FlowGraph graph) throws IOException;
+	}
+
+	private record Parsed(Path file, SymbolManager symbolManager, Program main, String error) {
+	}
+
+	/**
+	 * Automa di un servizio; {@code first} segna il primo elemento prodotto per il file.
+	 */
+	private record Analyzed(Path file, boolean first, String service, FlowGraph graph, String error) {
+	}
+}
@@ -0,0 +1,140 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import it.unibo.tesi.chorol.visitor.expression.ExprEvaluator;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Valori costanti noti delle variabili in un punto del programma, per percorso ("a.b").
+ * Assegnare un percorso invalida anche i suoi discendenti; un percorso con indici o nomi dinamici
+ * invalida tutto a partire dalla prima parte dinamica e non viene mai registrato.
+ * I percorsi condivisi (scritti da rami paralleli o da altre sessioni) non vengono mai registrati.
+ */
+final class ConstantEnv {
+	private final TreeMap<String, Object> values;
+	private final TreeSet<String> shared;
+	// nessun valore è affidabile, ad esempio dopo un alias di cui non si conoscono gli effetti
+	private boolean opaque;
+	private String key;
+
+	ConstantEnv() {
+		this(new TreeMap<>(), new TreeSet<>(), false);
+	}
+
+	private ConstantEnv(TreeMap<String, Object> values, TreeSet<String> shared, boolean opaque) {
+		this.values = values;
+		this.shared = shared;
+		this.opaque = opaque;
+	}
+
+	Object get(String path) {
+		return this.values.get(path);
+	}
+
+	/**
+	 * Registra il valore del percorso, o lo invalida se il valore non è noto.
+	 */
+	void set(String path, Object value) {
+		this.kill(path);
+		if (value != null && !this.opaque && ConstantEnv.base(path).equals(path) && !this.isShared(path))
+			this.values.put(path, value);
+	}
+
+	void kill(String path) {
+		String base = ConstantEnv.base(path);
+		this.values.keySet().removeIf(key -> ConstantEnv.covers(base, key));
+		this.key = null;
+	}
+
+	/**
+	 * Invalida i percorsi indicati; null indica che non si sa quali percorsi vengano scritti.
+	 */
+	void killAll(Set<String> paths) {
+		if (paths == null) this.values.clear();
+		else paths.forEach(this::kill);
+		this.key = null;
+	}
+
+	/**
+	 * Come {@link #killAll}, ma i percorsi restano invalidi anche dopo assegnamenti successivi.
+	 */
+	void share(Set<String> paths) {
+		if (paths == null) {
+			this.values.clear();
+			this.opaque = true;
+		} else paths.forEach(path -> {
+			this.kill(path);
+			this.shared.add(ConstantEnv.base(path));
+		});
+		this.key = null;
+	}
+
+	/**
+	 * Mantiene solo i valori dei percorsi che soddisfano il predicato.
+	 */
+	void retain(Predicate<String> paths) {
+		this.values.keySet().removeIf(paths.negate());
+		this.key = null;
+	}
+
+	ConstantEnv copy() {
+		return new ConstantEnv(new TreeMap<>(this.values), new TreeSet<>(this.shared), this.opaque);
+	}
+
+	/**
+	 * Ambiente dopo la confluenza di più cammini: restano i valori uguali su tutti i cammini.
+	 */
+	static ConstantEnv join(List<ConstantEnv> paths) {
+		ConstantEnv result = paths.get(0).copy();
+		for (ConstantEnv other : paths.subList(1, paths.size())) {
+			result.values.entrySet().removeIf(entry -> !entry.getValue().equals(other.values.get(entry.getKey())));
+			result.shared.addAll(other.shared);
+			result.opaque |= other.opaque;
+		}
+		return result;
+	}
+
+	/**
+	 * Chiave canonica dell'ambiente, vuota se non si conosce nulla.
+	 */
+	String key() {
+		if (this.key == null) {
+			StringBuilder key = new StringBuilder(this.opaque ? "#" : "");
+			this.values.forEach((path, value) ->
+					                    key.append(path.length()).append(':').append(path)
+							                    .append('=').append(ExprEvaluator.describeValue(value)).append(';'));
+			this.shared.forEach(path -> key.append('~').append(path.length()).append(':').append(path));
+			this.key = key.toString();
+		}
+		return this.key;
+	}
+
+	private boolean isShared(String path) {
+		return this.shared.stream().anyMatch(shared -> ConstantEnv.covers(shared, path) || ConstantEnv.covers(path, shared));
+	}
+
+	/**
+	 * Parte statica del percorso, fino al primo indice o nome dinamico.
+	 */
+	private static String base(String path) {
+		int dynamic = path.length();
+		for (int i = 0; i < path.length(); i++)
+			if (path.charAt(i) == '[' || path.charAt(i) == '(') {
+				dynamic = i;
+				break;
+			}
+		String base = path.substring(0, dynamic);
+		return base.endsWith(".") ? base.substring(0, base.length() - 1) : base;
+	}
+
+	/**
+	 * Vero se {@code path} coincide con {@code prefix} o ne è un discendente.
+	 */
+	private static boolean covers(String prefix, String path) {
+		if (!path.startsWith(prefix)) return false;
+		if (prefix.isEmpty() || path.length() == prefix.length()) return true;
+		char next = path.charAt(prefix.length());
+		return next == '.' || next == '[' || next == '(';
+	}
+}
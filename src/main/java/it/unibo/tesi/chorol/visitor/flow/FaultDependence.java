@@ -0,0 +1,68 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import jolie.lang.parse.ast.*;
+import jolie.util.Pair;
+
+import java.util.*;
+
+/**
+ * Sottoalberi che leggono o cambiano i gestori di fault del FlowContext (throw, install, scope),
+ * anche attraverso le procedure chiamate: il loro grafo vale solo per i gestori installati al momento
+ * della visita, quindi non può essere riusato altrove. Una chiamata ricorsiva conta come dipendente.
+ */
+final class FaultDependence {
+	private final Map<String, DefinitionNode> definitions;
+	private final Map<OLSyntaxNode, Boolean> cache = new IdentityHashMap<>();
+	private final Set<String> calling = new HashSet<>();
+
+	FaultDependence(Map<String, DefinitionNode> definitions) {
+		this.definitions = definitions;
+	}
+
+	boolean of(OLSyntaxNode node) {
+		if (node == null) return false;
+		Boolean cached = this.cache.get(node);
+		if (cached != null) return cached;
+		boolean dependent = this.compute(node);
+		this.cache.put(node, dependent);
+		return dependent;
+	}
+
+	void clear() {
+		this.cache.clear();
+		this.calling.clear();
+	}
+
+	private boolean compute(OLSyntaxNode node) {
+		List<OLSyntaxNode> children = new ArrayList<>();
+		if (node instanceof ThrowStatement || node instanceof InstallStatement || node instanceof Scope) return true;
+		else if (node instanceof RequestResponseOperationStatement n) children.add(n.process());
+		else if (node instanceof SequenceStatement n) children.addAll(n.children());
+		else if (node instanceof ParallelStatement n) children.addAll(n.children());
+		else if (node instanceof NDChoiceStatement n) n.children().forEach(child -> {
+			children.add(child.key());
+			children.add(child.value());
+		});
+		else if (node instanceof IfStatement n) {
+			n.children().stream().map(Pair::value).forEach(children::add);
+			children.add(n.elseProcess());
+		} else if (node instanceof WhileStatement n) children.add(n.body());
+		else if (node instanceof ForStatement n) children.addAll(Arrays.asList(n.init(), n.post(), n.body()));
+		else if (node instanceof ForEachArrayItemStatement n) children.add(n.body());
+		else if (node instanceof ForEachSubNodeStatement n) children.add(n.body());
+		else if (node instanceof SynchronizedStatement n) children.add(n.body());
+		else if (node instanceof SpawnStatement n) children.add(n.body());
+		else if (node instanceof DefinitionCallStatement n) {
+			DefinitionNode definition = this.definitions.get(n.id());
+			if (definition == null) return false;
+			if (!this.calling.add(n.id())) return true;
+			boolean body = this.of(definition.body());
+			this.calling.remove(n.id());
+			return body;
+		}
+
+		for (OLSyntaxNode child : children)
+			if (this.of(child)) return true;
+		return false;
+	}
+}
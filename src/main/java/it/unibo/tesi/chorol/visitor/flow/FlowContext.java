@@ -2,13 +2,16 @@ package it.unibo.tesi.chorol.visitor.flow;
 
 import it.unibo.tesi.chorol.symbols.services.Service;
 import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import jolie.lang.parse.ast.OLSyntaxNode;
 
 import java.util.HashMap;
 
 public class FlowContext {
 	private final Service service;
 	private final HashMap<String, FlowGraph> faults = new HashMap<>();
+	private final HashMap<String, OLSyntaxNode> handlers = new HashMap<>();
 	private boolean inInstall = false;
+	private ConstantEnv constants = new ConstantEnv();
 
 	FlowContext(final Service service) {
 		this.service = service;
@@ -18,18 +21,27 @@ public class FlowContext {
 		return this.service;
 	}
 
-	void addFault(String key, FlowGraph fault) {
+	/**
+	 * Installa il gestore {@code handler}, il cui grafo è {@code fault}.
+	 */
+	void addFault(String key, FlowGraph fault, OLSyntaxNode handler) {
 		this.faults.put(key, fault);
+		this.handlers.put(key, handler);
 	}
 
 	void removeFaults() {
 		this.faults.clear();
+		this.handlers.clear();
 	}
 
 	FlowGraph getFault(String key) {
 		return this.faults.get(key);
 	}
 
+	OLSyntaxNode getHandler(String key) {
+		return this.handlers.get(key);
+	}
+
 	boolean inInstall() {
 		return this.inInstall;
 	}
@@ -38,4 +50,12 @@ public class FlowContext {
 		this.inInstall = inInstall;
 	}
 
+	ConstantEnv constants() {
+		return this.constants;
+	}
+
+	void setConstants(ConstantEnv constants) {
+		this.constants = constants;
+	}
+
 }
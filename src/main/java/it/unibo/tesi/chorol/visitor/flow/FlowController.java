@@ -1,10 +1,13 @@
 package it.unibo.tesi.chorol.visitor.flow;
 
 import it.unibo.tesi.chorol.symbols.SymbolManager;
+import it.unibo.tesi.chorol.symbols.services.Service;
 import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
 import it.unibo.tesi.chorol.visitor.flow.graph.RequestEdge;
 import it.unibo.tesi.chorol.visitor.flow.graph.State;
 import jolie.lang.parse.ast.Program;
+import jolie.lang.parse.ast.ServiceNode;
+import jolie.lang.parse.util.impl.ProgramInspectorCreatorVisitor;
 import org.jgrapht.nio.Attribute;
 import org.jgrapht.nio.ExportException;
 import org.jgrapht.nio.dot.DOTExporter;
@@ -16,35 +19,140 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.function.Supplier;
 
 import static it.unibo.tesi.chorol.utils.Misc.loadProgram;
 import static org.jgrapht.nio.DefaultAttribute.createAttribute;
 
 public class FlowController {
 	private static final Logger logger = LoggerFactory.getLogger(FlowController.class);
+	private static final DOTExporter<State, RequestEdge> exporter = FlowController.getStateRequestEdgeDOTExporter();
+	private final SymbolManager symbolManager;
+	private FlowGraph flowGraph;
+	private Service service;
 
 	public FlowController(Path root) {
 		SymbolManager symManager = new SymbolManager(root);
+		this.symbolManager = symManager;
 		Program main = loadProgram(root.toUri());
 		if (main == null) {
 			FlowController.logger.error("Could not load program in {}", root.toUri());
 			return;
 		}
-		FlowVisitorBase flowVisitorBase = new FlowVisitor(symManager);
-		FlowGraph g = flowVisitorBase.visit(main, null);
+		ServiceNode serviceNode = new ProgramInspectorCreatorVisitor(main).createInspector().getServiceNodes()[0];
+		this.service = symManager.getServiceHolder().get(serviceNode.name());
+		FlowGraph g = this.getFlowGraph(serviceNode);
+		this.flowGraph = g;
+		FlowController.logger.debug("Automaton cache: {} hits, {} from disk, {} misses",
+				AutomatonCache.getHits(), AutomatonCache.getDiskHits(), AutomatonCache.getMisses());
 
 
-		DOTExporter<State, RequestEdge> exporter = FlowController.getStateRequestEdgeDOTExporter();
-
 		try (Writer writer = new FileWriter("flowgraph.dot")) {
-			exporter.exportGraph(g, writer);
+			FlowController.export(g, writer);
 		} catch (IOException | ExportException e) {
 			e.printStackTrace();
 		}
 
 	}
 
+	/**
+	 * Controller sui simboli già caricati, senza servizio principale né export (vedi {@link BatchPipeline}).
+	 */
+	FlowController(SymbolManager symbolManager) {
+		this.symbolManager = symbolManager;
+	}
+
+	/**
+	 * Automa del primo servizio di {@code root}, senza export su flowgraph.dot;
+	 * null se il programma non è stato caricato.
+	 */
+	public static FlowGraph analyzeFile(Path root) {
+		SymbolManager symbolManager = new SymbolManager(root);
+		Program main = loadProgram(root.toUri());
+		if (main == null) return null;
+		ServiceNode serviceNode = new ProgramInspectorCreatorVisitor(main).createInspector().getServiceNodes()[0];
+		return new FlowController(symbolManager).getFlowGraph(serviceNode);
+	}
+
+	/**
+	 * Grafo minimizzato del servizio, oppure null se il programma non è stato caricato.
+	 */
+	public FlowGraph getFlowGraph() {
+		return this.flowGraph;
+	}
+
+	/**
+	 * Servizio principale del programma, null se non è stato caricato o non ha simboli.
+	 */
+	public Service getService() {
+		return this.service;
+	}
+
+	/**
+	 * Automa minimizzato di un servizio, preso dalla cache condivisa se già calcolato (vedi {@link AutomatonCache}).
+	 */
+	public FlowGraph getFlowGraph(Service service) {
+		return this.getFlowGraph(service, service::getServiceNode);
+	}
+
+	/**
+	 * Come {@link #getFlowGraph(Service)}; l'AST viene richiesto solo se l'automa non è in cache
+	 * e non è più raggiungibile al termine dell'analisi.
+	 */
+	private FlowGraph getFlowGraph(Service service, Supplier<ServiceNode> serviceNode) {
+		List<Path> sources = service.getSource() == null
+				                     ? List.of()
+				                     : List.copyOf(this.symbolManager.getDependencies(service.getSource()));
+		return AutomatonCache.get(service, sources, () -> this.analyze(serviceNode.get()));
+	}
+
+	/**
+	 * Automa di un servizio di cui si ha già l'AST: non viene riletto dal sorgente.
+	 */
+	FlowGraph getFlowGraph(ServiceNode serviceNode) {
+		Service service = this.symbolManager.getServiceHolder().get(serviceNode.name());
+		FlowGraph g = service != null ? this.getFlowGraph(service, () -> serviceNode) : this.analyze(serviceNode);
+		if (g != null) FlowController.logger.debug("Service {}: fingerprint {}", serviceNode.name(), g.fingerprint());
+		return g;
+	}
+
+	/**
+	 * Automi dei servizi incorporati, direttamente o indirettamente, da {@code service}, per nome;
+	 * ogni servizio viene analizzato una sola volta anche se incorporato in più punti.
+	 */
+	public Map<String, FlowGraph> getEmbeddedFlowGraphs(Service service) {
+		Map<String, FlowGraph> graphs = new LinkedHashMap<>();
+		Queue<Service> queue = new LinkedList<>(service.getEmbeddedServices());
+		while (!queue.isEmpty()) {
+			Service embedded = queue.remove();
+			if (graphs.containsKey(embedded.name()) || embedded == service) continue;
+			graphs.put(embedded.name(), this.getFlowGraph(embedded));
+			queue.addAll(embedded.getEmbeddedServices());
+		}
+		return graphs;
+	}
+
+	private FlowGraph analyze(ServiceNode serviceNode) {
+		if (serviceNode == null) return null;
+		FlowVisitor flowVisitor = new FlowVisitor(this.symbolManager);
+		FlowGraph graph = flowVisitor.visit(serviceNode, null);
+		FlowController.logger.debug("Service {}: fragment memo {} hits, {} misses", serviceNode.name(),
+				flowVisitor.getMemoHits(), flowVisitor.getMemoMisses());
+		return graph;
+	}
+
+	public SymbolManager getSymbolManager() {
+		return this.symbolManager;
+	}
+
+	static void export(FlowGraph flowGraph, Writer writer) {
+		FlowController.exporter.exportGraph(flowGraph, writer);
+	}
+
 	private static DOTExporter<State, RequestEdge> getStateRequestEdgeDOTExporter() {
 		DOTExporter<State, RequestEdge> exporter = new DOTExporter<>(State::getId);
 
@@ -3,22 +3,41 @@ package it.unibo.tesi.chorol.visitor.flow;
 import it.unibo.tesi.chorol.symbols.SymbolManager;
 import it.unibo.tesi.chorol.symbols.interfaces.operations.Operation;
 import it.unibo.tesi.chorol.symbols.ports.Port;
+import it.unibo.tesi.chorol.utils.AnalysisSettings;
 import it.unibo.tesi.chorol.utils.GraphUtils;
+import it.unibo.tesi.chorol.visitor.expression.ExprEvaluator;
 import it.unibo.tesi.chorol.visitor.expression.ExprVisitor;
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
 import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.Guard;
 import it.unibo.tesi.chorol.visitor.flow.graph.RequestEdge;
 import it.unibo.tesi.chorol.visitor.flow.graph.State;
 import it.unibo.tesi.chorol.visitor.flow.graph.StateType;
+import jolie.lang.Constants;
 import jolie.lang.parse.ast.*;
 import jolie.lang.parse.ast.expression.OrConditionNode;
 import jolie.lang.parse.util.impl.ProgramInspectorCreatorVisitor;
+import jolie.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class FlowVisitor extends FlowVisitorBase {
+	private static final Logger logger = LoggerFactory.getLogger(FlowVisitor.class);
 	private final SymbolManager symbolManager;
+	// definizioni del servizio corrente e riassunti minimizzati delle procedure già visitate
+	private final Map<String, DefinitionNode> definitions = new HashMap<>();
+	private final Map<String, Fragment> summaries = new HashMap<>();
+	private final Set<String> inProgress = new HashSet<>();
+	// frammenti già costruiti, per id strutturale del nodo e costanti note all'ingresso
+	private final StructuralKeys structuralKeys = new StructuralKeys(this.definitions);
+	private final Map<String, Fragment> memo = new HashMap<>();
+	private final AssignedVariables assignedVariables = new AssignedVariables(this.definitions);
+	private final FaultDependence faultDependence = new FaultDependence(this.definitions);
+	private int memoHits = 0;
+	private int memoMisses = 0;
 
 	FlowVisitor(SymbolManager symbolManager) {
 		super();
@@ -27,59 +46,158 @@ public class FlowVisitor extends FlowVisitorBase {
 
 	@Override
 	public FlowGraph visit(Program program, FlowContext flowContext) {
+		return this.visit(new ProgramInspectorCreatorVisitor(program).createInspector().getServiceNodes()[0], flowContext);
+	}
+
+	@Override
+	public FlowGraph visit(ServiceNode serviceNode, FlowContext flowContext) {
 		FlowGraph result = new FlowGraph();
-		ServiceNode serviceNode = new ProgramInspectorCreatorVisitor(program).createInspector()
-				                          .getServiceNodes()[0];
 
-		result.setStartNode(State.createState());
-		result.getStartNode().setStateType(StateType.SERVICE);
+		this.definitions.clear();
+		this.summaries.clear();
+		this.structuralKeys.clear();
+		this.memo.clear();
+		this.assignedVariables.clear();
+		this.faultDependence.clear();
 		serviceNode.program().children().stream()
 				.filter(DefinitionNode.class::isInstance)
 				.map(DefinitionNode.class::cast)
-				.forEach(definitionNode -> {
-					FlowGraph subGraph = this.visit(definitionNode,
-							flowContext != null
-									? flowContext
-									: new FlowContext(
-									this.symbolManager.getServiceHolder().get(serviceNode.name()))
-					);
-					if (definitionNode.id().equals("main")) subGraph.getStartNode().setMain();
-					result.joinAfter(subGraph);
-				});
+				.forEach(definitionNode -> this.definitions.put(definitionNode.id(), definitionNode));
 
+		result.setStartNode(State.createState());
+		result.getStartNode().setStateType(StateType.SERVICE);
 		String executionMode = this.symbolManager.getServiceHolder().get(serviceNode.name()).getExecutionMode().name();
+		// le procedure entrano nel grafo solo dove vengono chiamate; main parte dalle costanti lasciate da init
+		ConstantEnv constants = new ConstantEnv();
+		boolean replicated = false;
+		for (String name : List.of("init", "main")) {
+			DefinitionNode definitionNode = this.definitions.get(name);
+			if (definitionNode == null) continue;
+			FlowContext context = flowContext != null
+					                      ? flowContext
+					                      : new FlowContext(this.symbolManager.getServiceHolder().get(serviceNode.name()));
+			context.setConstants(name.equals("main") ? this.sessionConstants(constants, definitionNode, executionMode) : constants);
+			FlowGraph subGraph = this.visit(definitionNode, context);
+			constants = context.constants();
+			if (name.equals("main") && executionMode.equals("CONCURRENT") && AnalysisSettings.getSessions() != 0) {
+				FlowGraph sessions = GraphUtils.replicateSessions(subGraph, AnalysisSettings.getSessions(), serviceNode.name());
+				if (sessions != null) {
+					subGraph = sessions;
+					replicated = true;
+				}
+			}
+			if (name.equals("main")) subGraph.getStartNode().setMain();
+			result.joinAfter(subGraph);
+		}
+
 		switch (executionMode) {
 			case "SINGLE":
 				break;
 			case "CONCURRENT":
 			case "SEQUENTIAL":
+				// le sessioni replicate con i contatori ripartono già da sole
+				if (replicated) break;
 				State main = result.vertexSet().stream().filter(State::isMain).findFirst().orElse(null);
-				result.addEdge(result.getEndNode(), main);
+				result.addEdge(result.getEndNode(), main, (String) null);
 				result.vertexSet().stream()
 						.filter(state -> state.getStateType().equals(StateType.END))
-						.forEach(state -> result.addEdge(state, main));
+						.forEach(state -> result.addEdge(state, main, (String) null));
 				break;
 		}
 
-		GraphUtils.clearGraph(result);
+		GraphUtils.clearGraph(result, serviceNode.name());
 		result.relabelNodesBFS();
 
 		return result;
 	}
 
+	/**
+	 * Costanti visibili a main: in modalità SINGLE tutto lo stato lasciato da init; altrimenti ogni sessione
+	 * parte da uno stato nuovo e vede solo le variabili globali non scritte da main, che altre sessioni
+	 * potrebbero modificare in qualunque momento.
+	 */
+	private ConstantEnv sessionConstants(ConstantEnv init, DefinitionNode main, String executionMode) {
+		ConstantEnv constants = init.copy();
+		if (executionMode.equals("SINGLE")) return constants;
+		constants.retain(FlowVisitor::isGlobal);
+		Set<String> written = this.assignedVariables.of(main.body());
+		constants.share(written == null ? null : written.stream().filter(FlowVisitor::isGlobal).collect(Collectors.toSet()));
+		return constants;
+	}
+
+	private static boolean isGlobal(String path) {
+		return path.equals("global") || path.startsWith("global.") || path.startsWith("global[");
+	}
+
 	@Override
 	public FlowGraph visit(DefinitionNode definitionNode, FlowContext flowContext) {
-		return definitionNode.body().accept(this, flowContext);
+		return this.fragment(this.visitChild(definitionNode.body(), flowContext), flowContext);
 	}
 
+	/**
+	 * Il corpo di una procedura viene visitato e minimizzato alla prima chiamata con le stesse costanti note;
+	 * le chiamate successive istanziano il riassunto con stati nuovi. I corpi che dipendono dai gestori
+	 * di fault installati (vedi {@link FaultDependence}) vengono invece visitati a ogni chiamata.
+	 */
+	@Override
+	public FlowGraph visit(DefinitionCallStatement definitionCallStatement, FlowContext flowContext) {
+		String name = definitionCallStatement.id();
+		String key = name + "@" + flowContext.constants().key();
+		if (!this.summaries.containsKey(key)) {
+			DefinitionNode definitionNode = this.definitions.get(name);
+			if (definitionNode == null) {
+				FlowVisitor.logger.warn("Undefined procedure {}", name);
+				return null;
+			}
+			if (!this.inProgress.add(name)) {
+				FlowVisitor.logger.warn("Recursive call to procedure {} ignored", name);
+				flowContext.constants().killAll(null);
+				return null;
+			}
+			FlowGraph body;
+			try {
+				body = this.visitChild(definitionNode.body(), flowContext);
+			} finally {
+				this.inProgress.remove(name);
+			}
+			if (this.faultDependence.of(definitionNode.body())) return body;
+			body = GraphUtils.minimizeFragment(body, flowContext.service().name());
+			this.summaries.put(key, new Fragment(body == null ? null : CompactGraph.of(body), flowContext.constants().copy()));
+		}
+		return this.instantiate(this.summaries.get(key), flowContext);
+	}
+
+	/**
+	 * Ogni ramo vede come condivisi i percorsi scritti dagli altri rami; dopo il blocco
+	 * restano note solo le costanti che nessun ramo scrive.
+	 */
 	@Override
 	public FlowGraph visit(ParallelStatement parallelStatement, FlowContext flowContext) {
+		ConstantEnv before = flowContext.constants();
+		List<OLSyntaxNode> children = parallelStatement.children();
+		List<Set<String>> written = children.stream().map(this.assignedVariables::of).toList();
+		List<FlowGraph> branches = new ArrayList<>();
+		for (int i = 0; i < children.size(); i++) {
+			ConstantEnv constants = before.copy();
+			for (int j = 0; j < children.size(); j++)
+				if (j != i) constants.share(written.get(j));
+			flowContext.setConstants(constants);
+			FlowGraph branch = this.visitChild(children.get(i), flowContext);
+			if (branch != null) branches.add(branch);
+		}
+		ConstantEnv after = before.copy();
+		written.forEach(after::killAll);
+		flowContext.setConstants(after);
+
+		if (AnalysisSettings.getInterleaving() && branches.size() > 1) {
+			FlowGraph interleaved = GraphUtils.interleave(branches, flowContext.service().name());
+			if (interleaved != null) return interleaved;
+		}
+
 		FlowGraph result = new FlowGraph();
 		result.setStartNode(State.createState());
 		result.setEndNode(State.createState());
-		parallelStatement.children().stream()
-				.map(child -> child.accept(this, flowContext))
-				.forEach(flowGraph -> result.joinBetween(flowGraph, null));
+		branches.forEach(flowGraph -> result.joinBetween(flowGraph, null));
 
 		return result;
 	}
@@ -89,7 +207,7 @@ public class FlowVisitor extends FlowVisitorBase {
 		FlowGraph result = new FlowGraph();
 		result.setStartNode(State.createState());
 		sequenceStatement.children().stream()
-				.map(child -> child.accept(this, flowContext))
+				.map(child -> this.visitChild(child, flowContext))
 				.filter(Objects::nonNull)
 				.forEach(result::joinAfter);
 		return result;
@@ -101,18 +219,23 @@ public class FlowVisitor extends FlowVisitorBase {
 		FlowGraph result = new FlowGraph();
 		result.setStartNode(State.createState());
 		result.setEndNode(State.createState());
+		ConstantEnv before = flowContext.constants();
+		List<ConstantEnv> exits = new ArrayList<>();
 		ndChoiceStatement.children()
 				.forEach(child -> {
-					FlowGraph key = child.key().accept(this, flowContext);
-					FlowGraph value = child.value().accept(this, flowContext);
-					key.joinAfter(value);
-					result.joinBetween(key.joinAfter(value), null);
+					flowContext.setConstants(before.copy());
+					FlowGraph key = this.visitChild(child.key(), flowContext);
+					FlowGraph value = this.visitChild(child.value(), flowContext);
+					result.joinBetween(this.fragment(key.joinAfter(value), flowContext), null);
+					exits.add(flowContext.constants());
 				});
+		flowContext.setConstants(exits.isEmpty() ? before : ConstantEnv.join(exits));
 		return result;
 	}
 
 	@Override
 	public FlowGraph visit(OneWayOperationStatement oneWayOperationStatement, FlowContext flowContext) {
+		FlowVisitor.kill(flowContext, oneWayOperationStatement.inputVarPath());
 		return new FlowGraph(
 				flowContext.service().name(),
 				flowContext.service().getInputPortHolder().getOperation(oneWayOperationStatement.id()),
@@ -123,11 +246,12 @@ public class FlowVisitor extends FlowVisitorBase {
 
 	@Override
 	public FlowGraph visit(RequestResponseOperationStatement requestResponseOperationStatement, FlowContext flowContext) {
+		FlowVisitor.kill(flowContext, requestResponseOperationStatement.inputVarPath());
 		return new FlowGraph(
 				flowContext.service().name(),
 				flowContext.service().getInputPortHolder().getOperation(requestResponseOperationStatement.id()),
 				"Input",
-				requestResponseOperationStatement.process().accept(this, flowContext)
+				this.fragment(this.visitChild(requestResponseOperationStatement.process(), flowContext), flowContext)
 		);
 	}
 
@@ -145,9 +269,16 @@ public class FlowVisitor extends FlowVisitorBase {
 		Port<OutputPortInfo> p = flowContext.service().getOutputPortHolder().get(solicitResponseOperationStatement.outputPortId());
 		String serviceName = solicitResponseOperationStatement.context().enclosingCode().get(0)
 				                     .split("@")[1].split("\\(")[0];
+		FlowVisitor.kill(flowContext, solicitResponseOperationStatement.inputVarPath());
 		return new FlowGraph(serviceName, p.getOperation(solicitResponseOperationStatement.id()), "Output", null);
 	}
 
+	/**
+	 * Le guardie vengono valutate con le costanti note: i rami con guardia falsa vengono scartati e,
+	 * dopo una guardia vera, anche tutti i successivi e l'else. La numerazione IF#n resta quella del sorgente.
+	 * Ogni arco porta il predicato del ramo (la sua condizione e la negazione delle precedenti non note),
+	 * usato dalla determinizzazione per fondere guardie equivalenti.
+	 */
 	@Override
 	public FlowGraph visit(IfStatement ifStatement, FlowContext flowContext) {
 		FlowGraph result = new FlowGraph();
@@ -156,45 +287,65 @@ public class FlowVisitor extends FlowVisitorBase {
 		result.setStartNode(startNode);
 		result.setEndNode(endNode);
 
-		if (ifStatement.children().size() > 1) {
-			AtomicInteger counter = new AtomicInteger(1);
-			ifStatement.children().forEach(entry ->
-					                               result.joinBetween(
-							                               entry.value().accept(this, flowContext),
-							                               String.format("IF#%d[%s]",
-									                               counter.getAndIncrement(),
-									                               new ExprVisitor().visit((OrConditionNode) entry.key(), null))
-					                               )
-			);
-		} else ifStatement.children().forEach(entry ->
-				                                      result.joinBetween(
-						                                      entry.value().accept(this, flowContext),
-						                                      String.format("IF[%s]",
-								                                      new ExprVisitor().visit((OrConditionNode) entry.key(), null))
-				                                      )
-		);
-
-		ifStatement.children().forEach(child -> child.value().accept(this, flowContext));
-
-		if (ifStatement.elseProcess() != null) {
-			FlowGraph elseGraph = ifStatement.elseProcess().accept(this, flowContext);
-			result.joinBetween(elseGraph, "ELSE");
-		} else {
+		ConstantEnv before = flowContext.constants();
+		List<ConstantEnv> exits = new ArrayList<>();
+		// condizioni precedenti non note, che il ramo corrente richiede false
+		Map<String, Boolean> previous = new LinkedHashMap<>();
+		boolean numbered = ifStatement.children().size() > 1;
+		boolean taken = false;
+		int counter = 1;
+		for (Pair<OLSyntaxNode, OLSyntaxNode> entry : ifStatement.children()) {
+			int index = counter++;
+			Object guard = ExprEvaluator.evaluate(entry.key(), before::get);
+			String condition = new ExprVisitor().visit((OrConditionNode) entry.key(), null);
+			if (Boolean.FALSE.equals(guard) || previous.containsKey(condition)) continue;
+			Map<String, Boolean> predicate = new LinkedHashMap<>(previous);
+			if (guard == null) predicate.put(condition, true);
+			String display = numbered ? String.format("IF#%d[%s]", index, condition) : String.format("IF[%s]", condition);
+			exits.add(this.branch(result, entry.value(), Guard.label(display, Guard.cube(predicate)), before, flowContext));
+			if (Boolean.TRUE.equals(guard)) {
+				taken = true;
+				break;
+			}
+			previous.put(condition, false);
+		}
+		if (exits.size() < ifStatement.children().size())
+			FlowVisitor.logger.debug("Pruned {} of {} if branches", ifStatement.children().size() - exits.size(),
+					ifStatement.children().size());
+
+		String otherwise = Guard.label("ELSE", Guard.cube(previous));
+		if (!taken && ifStatement.elseProcess() != null)
+			exits.add(this.branch(result, ifStatement.elseProcess(), otherwise, before, flowContext));
+		else if (!taken) {
 			result.removeEdge(startNode, endNode);
-			result.addEdge(startNode, endNode, new RequestEdge("ELSE"));
+			result.addEdge(startNode, endNode, new RequestEdge(otherwise));
+			exits.add(before);
 		}
+		flowContext.setConstants(ConstantEnv.join(exits));
 		return result;
 	}
 
+	/**
+	 * Visita un ramo a partire dalle costanti note prima del costrutto; restituisce quelle note all'uscita.
+	 */
+	private ConstantEnv branch(FlowGraph result, OLSyntaxNode body, String label, ConstantEnv before, FlowContext flowContext) {
+		flowContext.setConstants(before.copy());
+		result.joinBetween(this.fragment(this.visitChild(body, flowContext), flowContext), label);
+		return flowContext.constants();
+	}
+
 	@Override
 	public FlowGraph visit(WhileStatement whileStatement, FlowContext flowContext) {
 		//TODO puo' avvenire una richiesta nella condizione del while?
 		FlowGraph result = new FlowGraph();
 		result.setStartNode(State.createState());
-		FlowGraph body = whileStatement.body().accept(this, flowContext);
+		ConstantEnv invariant = this.loopInvariant(flowContext, whileStatement.body());
+		flowContext.setConstants(invariant.copy());
+		FlowGraph body = this.fragment(this.visitChild(whileStatement.body(), flowContext), flowContext);
+		flowContext.setConstants(invariant);
 		result.copyGraph(body);
-		result.addEdge(result.getStartNode(), body.getStartNode());
-		result.addEdge(body.getEndNode(), result.getEndNode());
+		result.addEdge(result.getStartNode(), body.getStartNode(), (String) null);
+		result.addEdge(body.getEndNode(), result.getEndNode(), (String) null);
 		return result;
 	}
 
@@ -211,28 +362,42 @@ public class FlowVisitor extends FlowVisitorBase {
 	public FlowGraph visit(ForEachArrayItemStatement forEachArrayItemStatement, FlowContext flowContext) {
 		FlowGraph result = new FlowGraph();
 		result.setStartNode(State.createState());
-		FlowGraph body = forEachArrayItemStatement.body().accept(this, flowContext);
+		FlowVisitor.kill(flowContext, forEachArrayItemStatement.keyPath());
+		ConstantEnv invariant = this.loopInvariant(flowContext, forEachArrayItemStatement.body());
+		flowContext.setConstants(invariant.copy());
+		FlowGraph body = this.fragment(this.visitChild(forEachArrayItemStatement.body(), flowContext), flowContext);
+		flowContext.setConstants(invariant);
 		result.copyGraph(body);
-		result.addEdge(result.getStartNode(), body.getStartNode());
-		result.addEdge(body.getEndNode(), result.getEndNode());
+		result.addEdge(result.getStartNode(), body.getStartNode(), (String) null);
+		result.addEdge(body.getEndNode(), result.getEndNode(), (String) null);
 		return result;
 	}
 
 
 	@Override
 	public FlowGraph visit(ForStatement forStatement, FlowContext flowContext) {
-		return forStatement.body().accept(this, flowContext);
+		if (forStatement.init() != null) this.visitChild(forStatement.init(), flowContext);
+		ConstantEnv invariant = this.loopInvariant(flowContext, forStatement.post(), forStatement.body());
+		flowContext.setConstants(invariant.copy());
+		FlowGraph body = this.fragment(this.visitChild(forStatement.body(), flowContext), flowContext);
+		flowContext.setConstants(invariant);
+		return body;
 	}
 
 	@Override
 	public FlowGraph visit(ForEachSubNodeStatement forEachSubNodeStatement, FlowContext flowContext) {
-		return forEachSubNodeStatement.body().accept(this, flowContext);
+		FlowVisitor.kill(flowContext, forEachSubNodeStatement.keyPath());
+		ConstantEnv invariant = this.loopInvariant(flowContext, forEachSubNodeStatement.body());
+		flowContext.setConstants(invariant.copy());
+		FlowGraph body = this.fragment(this.visitChild(forEachSubNodeStatement.body(), flowContext), flowContext);
+		flowContext.setConstants(invariant);
+		return body;
 	}
 
 
 	@Override
 	public FlowGraph visit(SynchronizedStatement synchronizedStatement, FlowContext flowContext) {
-		return synchronizedStatement.body().accept(this, flowContext);
+		return this.visitChild(synchronizedStatement.body(), flowContext);
 	}
 
 	@Override
@@ -245,39 +410,211 @@ public class FlowVisitor extends FlowVisitorBase {
 
 	@Override
 	public FlowGraph visit(Scope scope, FlowContext flowContext) {
-		FlowGraph result = scope.body().accept(this, flowContext);
+		FlowGraph result = this.visitChild(scope.body(), flowContext);
 		flowContext.removeFaults();
 		return result;
 	}
 
 	@Override
 	public FlowGraph visit(InstallStatement installStatement, FlowContext flowContext) {
+		// un gestore può partire in qualunque punto dello scope: non si assume nessuna costante
+		ConstantEnv constants = flowContext.constants();
 		flowContext.setInInstall(true);
 		Arrays.stream(installStatement.handlersFunction().pairs())
-				.forEach(entry ->
-						         flowContext.addFault(entry.key(), entry.value().accept(this, flowContext)));
+				.forEach(entry -> {
+					flowContext.setConstants(new ConstantEnv());
+					flowContext.addFault(entry.key(), entry.value().accept(this, flowContext), entry.value());
+				});
 		flowContext.setInInstall(false);
+		flowContext.setConstants(constants);
 		return null;
 	}
 
+	/**
+	 * Il throw esegue il gestore installato: le variabili che il gestore scrive non sono più note.
+	 */
 	@Override
 	public FlowGraph visit(ThrowStatement throwStatement, FlowContext flowContext) {
 		FlowGraph result = null;
 		if (flowContext.inInstall() && throwStatement.expression() != null)
-			flowContext.addFault(throwStatement.id(), throwStatement.expression().accept(this, flowContext));
+			flowContext.addFault(throwStatement.id(), throwStatement.expression().accept(this, flowContext),
+					throwStatement.expression());
 		else if (!flowContext.inInstall()) {
-			result = flowContext.getFault(throwStatement.id());
-			if (result == null) result = flowContext.getFault("default");
-			result.vertexSet().stream().filter(state -> state.getStateType().equals(StateType.NORMAL)).forEach(state -> state.setStateType(StateType.FAULT));
+			String fault = flowContext.getFault(throwStatement.id()) != null ? throwStatement.id() : "default";
+			result = flowContext.getFault(fault);
+			flowContext.constants().killAll(this.assignedVariables.of(flowContext.getHandler(fault)));
+			// un gestore che non comunica (ad esempio solo assegnamenti) non ha grafo
+			if (result != null)
+				result.vertexSet().stream().filter(state -> state.getStateType().equals(StateType.NORMAL)).forEach(state -> state.setStateType(StateType.FAULT));
 		}
 		return result;
 	}
 
+	/**
+	 * Le istanze dello spawn condividono con il chiamante solo le variabili globali, come le sessioni;
+	 * con un limite costante le istanze sono contate in modo esatto.
+	 */
 	@Override
 	public FlowGraph visit(SpawnStatement spawnStatement, FlowContext flowContext) {
-		spawnStatement.upperBoundExpression().accept(this, flowContext);
+		ConstantEnv constants = flowContext.constants();
+		Object upperBound = ExprEvaluator.evaluate(spawnStatement.upperBoundExpression(), constants::get);
+		int instances = upperBound instanceof Long n && n >= 0 && n <= Integer.MAX_VALUE ? n.intValue() : -1;
+
+		Set<String> written = this.assignedVariables.of(spawnStatement.body());
+		Set<String> globals = written == null ? null : written.stream().filter(FlowVisitor::isGlobal).collect(Collectors.toSet());
+		ConstantEnv instance = constants.copy();
+		instance.retain(FlowVisitor::isGlobal);
+		instance.share(globals);
+		flowContext.setConstants(instance);
+		FlowGraph body = this.visitChild(spawnStatement.body(), flowContext);
+		flowContext.setConstants(constants);
+		constants.killAll(globals);
+		FlowVisitor.kill(flowContext, spawnStatement.inVariablePath());
+		if (body == null) return null;
+
+		FlowGraph result = GraphUtils.replicateSpawn(body, instances, flowContext.service().name());
+		return result != null ? result : body;
+	}
+
+	@Override
+	public FlowGraph visit(AssignStatement assignStatement, FlowContext flowContext) {
+		ConstantEnv constants = flowContext.constants();
+		constants.set(assignStatement.variablePath().toPrettyString(),
+				ExprEvaluator.evaluate(assignStatement.expression(), constants::get));
+		return null;
+	}
+
+	@Override
+	public FlowGraph visit(AddAssignStatement addAssignStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, addAssignStatement.variablePath(), Constants.OperandType.ADD,
+				ExprEvaluator.evaluate(addAssignStatement.expression(), flowContext.constants()::get));
+	}
+
+	@Override
+	public FlowGraph visit(SubtractAssignStatement subtractAssignStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, subtractAssignStatement.variablePath(), Constants.OperandType.SUBTRACT,
+				ExprEvaluator.evaluate(subtractAssignStatement.expression(), flowContext.constants()::get));
+	}
+
+	@Override
+	public FlowGraph visit(MultiplyAssignStatement multiplyAssignStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, multiplyAssignStatement.variablePath(), Constants.OperandType.MULTIPLY,
+				ExprEvaluator.evaluate(multiplyAssignStatement.expression(), flowContext.constants()::get));
+	}
+
+	@Override
+	public FlowGraph visit(DivideAssignStatement divideAssignStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, divideAssignStatement.variablePath(), Constants.OperandType.DIVIDE,
+				ExprEvaluator.evaluate(divideAssignStatement.expression(), flowContext.constants()::get));
+	}
+
+	@Override
+	public FlowGraph visit(PreIncrementStatement preIncrementStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, preIncrementStatement.variablePath(), Constants.OperandType.ADD, 1L);
+	}
+
+	@Override
+	public FlowGraph visit(PostIncrementStatement postIncrementStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, postIncrementStatement.variablePath(), Constants.OperandType.ADD, 1L);
+	}
+
+	@Override
+	public FlowGraph visit(PreDecrementStatement preDecrementStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, preDecrementStatement.variablePath(), Constants.OperandType.SUBTRACT, 1L);
+	}
+
+	@Override
+	public FlowGraph visit(PostDecrementStatement postDecrementStatement, FlowContext flowContext) {
+		return FlowVisitor.update(flowContext, postDecrementStatement.variablePath(), Constants.OperandType.SUBTRACT, 1L);
+	}
+
+	@Override
+	public FlowGraph visit(DeepCopyStatement deepCopyStatement, FlowContext flowContext) {
+		FlowVisitor.kill(flowContext, deepCopyStatement.leftPath());
+		return null;
+	}
+
+	@Override
+	public FlowGraph visit(UndefStatement undefStatement, FlowContext flowContext) {
+		FlowVisitor.kill(flowContext, undefStatement.variablePath());
+		return null;
+	}
+
+	/**
+	 * Dopo un alias i due percorsi possono cambiare l'uno attraverso l'altro.
+	 */
+	@Override
+	public FlowGraph visit(PointerStatement pointerStatement, FlowContext flowContext) {
+		flowContext.constants().share(Set.of(pointerStatement.leftPath().toPrettyString(),
+				pointerStatement.rightPath().toPrettyString()));
+		return null;
+	}
+
+	public int getMemoHits() {
+		return this.memoHits;
+	}
+
+	public int getMemoMisses() {
+		return this.memoMisses;
+	}
+
+	/**
+	 * Visita un figlio passando dalla memo: un sottoalbero strutturalmente uguale a uno già visitato
+	 * riusa il frammento salvato, istanziato con stati nuovi.
+	 */
+	private FlowGraph visitChild(OLSyntaxNode node, FlowContext flowContext) {
+		int id = this.structuralKeys.keyOf(node);
+		if (id == StructuralKeys.NONE) return node.accept(this, flowContext);
+		String key = id + "@" + flowContext.constants().key();
+		Fragment fragment = this.memo.get(key);
+		if (fragment != null) {
+			this.memoHits++;
+			return this.instantiate(fragment, flowContext);
+		}
+		this.memoMisses++;
+		FlowGraph result = node.accept(this, flowContext);
+		this.memo.put(key, new Fragment(result == null ? null : CompactGraph.of(result), flowContext.constants().copy()));
+		return result;
+	}
+
+	/**
+	 * Istanzia un frammento salvato con stati nuovi e riporta le costanti note alla sua uscita.
+	 */
+	private FlowGraph instantiate(Fragment fragment, FlowContext flowContext) {
+		flowContext.setConstants(fragment.constants().copy());
+		return fragment.graph() == null ? null : fragment.graph().toFlowGraph();
+	}
+
+	/**
+	 * Costanti note all'ingresso di un ciclo: valgono a ogni iterazione solo quelle che il corpo non scrive.
+	 */
+	private ConstantEnv loopInvariant(FlowContext flowContext, OLSyntaxNode... bodies) {
+		ConstantEnv invariant = flowContext.constants().copy();
+		for (OLSyntaxNode body : bodies) invariant.killAll(this.assignedVariables.of(body));
+		return invariant;
+	}
+
+	private static void kill(FlowContext flowContext, VariablePathNode path) {
+		if (path != null) flowContext.constants().kill(path.toPrettyString());
+	}
+
+	private static FlowGraph update(FlowContext flowContext, VariablePathNode path, Constants.OperandType operand, Object value) {
+		ConstantEnv constants = flowContext.constants();
+		String name = path.toPrettyString();
+		constants.set(name, ExprEvaluator.apply(operand, constants.get(name), value));
 		return null;
 	}
 
+	/**
+	 * Con la minimizzazione composizionale ogni frammento viene ridotto appena costruito,
+	 * così i grafi esterni compongono automi già piccoli.
+	 */
+	private FlowGraph fragment(FlowGraph graph, FlowContext flowContext) {
+		return AnalysisSettings.getCompositionalMinimization()
+				       ? GraphUtils.minimizeFragment(graph, flowContext.service().name())
+				       : graph;
+	}
 
+	private record Fragment(CompactGraph graph, ConstantEnv constants) {
+	}
 }
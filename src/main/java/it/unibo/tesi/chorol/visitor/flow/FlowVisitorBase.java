@@ -29,12 +29,6 @@ public abstract class FlowVisitorBase implements OLVisitor<FlowContext, FlowGrap
 		return null;
 	}
 
-	@Override
-	public FlowGraph visit(DefinitionCallStatement definitionCallStatement, FlowContext flowContext) {
-		FlowVisitorBase.logger.info("TODO definitionCallStatement");
-		return null;
-	}
-
 	@Override
 	public FlowGraph visit(CompensateStatement compensateStatement, FlowContext flowContext) {
 		FlowVisitorBase.logger.info("TODO compensateStatement");
@@ -47,12 +41,6 @@ public abstract class FlowVisitorBase implements OLVisitor<FlowContext, FlowGrap
 		return null;
 	}
 
-	@Override
-	public FlowGraph visit(PointerStatement pointerStatement, FlowContext flowContext) {
-		FlowVisitorBase.logger.info("TODO pointerStatement");
-		return null;
-	}
-
 	@Override
 	public FlowGraph visit(RunStatement runStatement, FlowContext flowContext) {
 		FlowVisitorBase.logger.info("TODO runStatement");
@@ -117,31 +105,6 @@ public abstract class FlowVisitorBase implements OLVisitor<FlowContext, FlowGrap
 		return null;
 	}
 
-	@Override
-	public FlowGraph visit(AssignStatement assignStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(AddAssignStatement addAssignStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(SubtractAssignStatement subtractAssignStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(MultiplyAssignStatement multiplyAssignStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(DivideAssignStatement divideAssignStatement, FlowContext flowContext) {
-		return null;
-	}
-
 	@Override
 	public FlowGraph visit(ConstantBoolExpression constantBoolExpression, FlowContext flowContext) {
 		return null;
@@ -157,21 +120,6 @@ public abstract class FlowVisitorBase implements OLVisitor<FlowContext, FlowGrap
 		return null;
 	}
 
-	@Override
-	public FlowGraph visit(DeepCopyStatement deepCopyStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(UndefStatement undefStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(ServiceNode serviceNode, FlowContext flowContext) {
-		return null;
-	}
-
 	@Override
 	public FlowGraph visit(EmbedServiceNode embedServiceNode, FlowContext flowContext) {
 		return null;
@@ -262,26 +210,6 @@ public abstract class FlowVisitorBase implements OLVisitor<FlowContext, FlowGrap
 		return null;
 	}
 
-	@Override
-	public FlowGraph visit(PreIncrementStatement preIncrementStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(PostIncrementStatement postIncrementStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(PreDecrementStatement preDecrementStatement, FlowContext flowContext) {
-		return null;
-	}
-
-	@Override
-	public FlowGraph visit(PostDecrementStatement postDecrementStatement, FlowContext flowContext) {
-		return null;
-	}
-
 	@Override
 	public FlowGraph visit(IsTypeExpressionNode isTypeExpressionNode, FlowContext flowContext) {
 		return null;
@@ -0,0 +1,282 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import it.unibo.tesi.chorol.symbols.SymbolManager;
+import it.unibo.tesi.chorol.visitor.flow.graph.CompactGraph;
+import it.unibo.tesi.chorol.visitor.flow.graph.FlowGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Analisi di una cartella ripartita su più JVM locali, per superare il limite di un solo heap.
+ * I file sono raggruppati nelle componenti connesse del grafo degli import, così i moduli condivisi vengono
+ * caricati e analizzati da un solo processo; le componenti sono assegnate, dalla più grande, al processo
+ * meno carico (peso: byte dei sorgenti). Ogni worker riceve i suoi file su stdin, uno per riga, li analizza
+ * con una {@link BatchPipeline} e restituisce su stdout gli automi in forma compatta ({@link CompactGraph#write})
+ * seguiti dal suo {@link BatchPipeline.Report}; il coordinatore li esporta e unisce gli esiti.
+ * I worker condividono la cache su disco, che tollera processi concorrenti (vedi {@link AutomatonStore}).
+ */
+public final class ShardCoordinator {
+	private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+	private static final int GRAPH = 'G';
+	private static final int REPORT = 'R';
+
+	private final Path input;
+	private final BatchPipeline.Sink sink;
+	private final int processes;
+	private final List<String> command;
+
+	/**
+	 * {@code command} avvia un worker, cioè una JVM che esegue {@link #serve}.
+	 */
+	public ShardCoordinator(Path input, BatchPipeline.Sink sink, int processes, List<String> command) {
+		if (processes < 1) throw new IllegalArgumentException("The number of processes must be positive");
+		this.input = input.toAbsolutePath().normalize();
+		this.sink = sink;
+		this.processes = processes;
+		this.command = List.copyOf(command);
+	}
+
+	public BatchPipeline.Report run() throws IOException {
+		List<List<Path>> shards = this.partition();
+		if (shards.isEmpty()) return new BatchPipeline.Report(0, 0, 0, 0, 0, 0, 0, 0, List.of());
+		ExecutorService executor = Executors.newFixedThreadPool(2 * shards.size());
+		List<Process> workers = new ArrayList<>();
+		try {
+			List<Future<Void>> sends = new ArrayList<>();
+			List<Future<BatchPipeline.Report>> reports = new ArrayList<>();
+			for (List<Path> shard : shards) {
+				Process worker = new ProcessBuilder(this.command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				workers.add(worker);
+				// file e automi viaggiano su thread diversi: il worker può rispondere prima di aver letto tutto
+				sends.add(executor.submit(() -> ShardCoordinator.send(worker, shard)));
+				reports.add(executor.submit(() -> this.receive(worker)));
+			}
+			BatchPipeline.Report report = null;
+			for (int i = 0; i < workers.size(); i++) {
+				BatchPipeline.Report result = reports.get(i).get();
+				try {
+					sends.get(i).get();
+				} catch (ExecutionException e) {
+					// il worker non ha ricevuto tutti i suoi file: l'esito che ha riportato è incompleto
+					result = result.merge(ShardCoordinator.failure(
+							"cannot send the files to worker " + workers.get(i).pid() + ": " + e.getCause()));
+				}
+				int status = workers.get(i).waitFor();
+				if (status != 0)
+					result = result.merge(ShardCoordinator.failure("worker " + workers.get(i).pid() + " exited with status " + status));
+				report = report == null ? result : report.merge(result);
+			}
+			return report;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Sharded analysis interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io) throw io;
+			throw new IOException("Sharded analysis failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+			workers.forEach(Process::destroy);
+		}
+	}
+
+	/**
+	 * File .ol della cartella divisi tra al più {@code processes} worker, senza spezzare le componenti
+	 * connesse del grafo degli import; i file che non si riescono a leggere restano isolati.
+	 * Gli import dei file vengono letti in parallelo, perché ognuno richiede il parser di Jolie.
+	 */
+	List<List<Path>> partition() throws IOException {
+		Map<Path, Integer> ids = new HashMap<>();
+		List<Integer> parent = new ArrayList<>();
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> tree = BatchPipeline.tree(this.input).open()) {
+			tree.map(file -> file.toAbsolutePath().normalize()).forEach(files::add);
+		}
+		List<Set<Path>> imports = files.parallelStream().map(ShardCoordinator::importsOf).toList();
+		for (int i = 0; i < files.size(); i++) {
+			int id = ShardCoordinator.id(files.get(i), ids, parent);
+			for (Path imported : imports.get(i))
+				ShardCoordinator.union(id, ShardCoordinator.id(imported, ids, parent), parent);
+		}
+
+		Map<Integer, List<Path>> components = new LinkedHashMap<>();
+		Map<Integer, Long> weights = new HashMap<>();
+		for (Path file : files) {
+			int root = ShardCoordinator.find(ids.get(file), parent);
+			components.computeIfAbsent(root, key -> new ArrayList<>()).add(file);
+			weights.merge(root, Files.size(file), Long::sum);
+		}
+		List<Integer> roots = new ArrayList<>(components.keySet());
+		roots.sort(Comparator.comparing(weights::get, Comparator.reverseOrder()));
+
+		int count = Math.min(this.processes, roots.size());
+		List<List<Path>> shards = new ArrayList<>();
+		long[] loads = new long[count];
+		PriorityQueue<Integer> lightest = new PriorityQueue<>(Comparator.comparingLong((Integer shard) -> loads[shard])
+				                                                      .thenComparingInt(shard -> shard));
+		for (int shard = 0; shard < count; shard++) {
+			shards.add(new ArrayList<>());
+			lightest.add(shard);
+		}
+		for (int root : roots) {
+			int shard = lightest.remove();
+			shards.get(shard).addAll(components.get(root));
+			loads[shard] += weights.get(root);
+			lightest.add(shard);
+		}
+		ShardCoordinator.logger.debug("{} files, {} import components, shard loads {}", files.size(), roots.size(),
+				Arrays.toString(loads));
+		return shards;
+	}
+
+	private static Set<Path> importsOf(Path file) {
+		try {
+			return SymbolManager.importsOf(file);
+		} catch (RuntimeException e) {
+			ShardCoordinator.logger.debug("Cannot read the imports of {}: {}", file, e.toString());
+			return Set.of();
+		}
+	}
+
+	private static int id(Path file, Map<Path, Integer> ids, List<Integer> parent) {
+		return ids.computeIfAbsent(file, key -> {
+			parent.add(parent.size());
+			return parent.size() - 1;
+		});
+	}
+
+	private static int find(int id, List<Integer> parent) {
+		while (parent.get(id) != id) {
+			parent.set(id, parent.get(parent.get(id)));
+			id = parent.get(id);
+		}
+		return id;
+	}
+
+	private static void union(int a, int b, List<Integer> parent) {
+		int rootA = ShardCoordinator.find(a, parent), rootB = ShardCoordinator.find(b, parent);
+		if (rootA != rootB) parent.set(Math.max(rootA, rootB), Math.min(rootA, rootB));
+	}
+
+	private static Void send(Process worker, List<Path> shard) throws IOException {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(worker.getOutputStream(), StandardCharsets.UTF_8))) {
+			for (Path file : shard) writer.write(file + "\n");
+		}
+		return null;
+	}
+
+	private BatchPipeline.Report receive(Process worker) throws IOException {
+		BatchPipeline.Report report = null;
+		List<String> failures = new ArrayList<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(worker.getInputStream()))) {
+			while (report == null) {
+				int tag = in.read();
+				if (tag == -1) break;
+				if (tag == ShardCoordinator.GRAPH) {
+					Path file = Paths.get(ShardCoordinator.readString(in));
+					String service = ShardCoordinator.readString(in);
+					FlowGraph graph = CompactGraph.read(in).toFlowGraph();
+					graph.relabelNodesBFS();
+					try {
+						this.sink.accept(file, service, graph);
+					} catch (IOException | RuntimeException e) {
+						failures.add(file + " " + service + ": " + e);
+					}
+				} else if (tag == ShardCoordinator.REPORT) report = ShardCoordinator.readReport(in);
+				else throw new IOException("Unexpected record " + tag + " from worker " + worker.pid());
+			}
+		} catch (EOFException e) {
+			// il worker è terminato a metà di un record: si riporta come se mancasse l'esito
+		}
+		if (report == null) return ShardCoordinator.failure("worker " + worker.pid() + " ended without a report");
+		if (failures.isEmpty()) return report;
+		// gli automi che il coordinatore non è riuscito a esportare erano contati come riusciti dal worker
+		int services = report.services() - failures.size();
+		failures.addAll(0, report.failures());
+		return new BatchPipeline.Report(report.files(), services, report.skipped(), report.states(), report.edges(),
+				report.cacheHits(), report.cacheMisses(), report.peakHeap(), failures);
+	}
+
+	private static BatchPipeline.Report failure(String message) {
+		return new BatchPipeline.Report(0, 0, 0, 0, 0, 0, 0, 0, List.of(message));
+	}
+
+	/**
+	 * Lato worker: analizza i file letti da {@code in} e scrive su {@code out} gli automi e l'esito.
+	 * Su {@code out} non deve scrivere nient'altro, quindi i log vanno altrove (ad esempio su stderr).
+	 */
+	public static void serve(InputStream in, OutputStream out, int workers) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		BatchPipeline.Report report = new BatchPipeline(
+				() -> reader.lines().filter(line -> !line.isBlank()).map(Paths::get),
+				(file, service, graph) -> {
+					data.writeByte(ShardCoordinator.GRAPH);
+					ShardCoordinator.writeString(data, file.toString());
+					ShardCoordinator.writeString(data, service);
+					CompactGraph.of(graph).write(data);
+				},
+				workers).run();
+		data.writeByte(ShardCoordinator.REPORT);
+		ShardCoordinator.writeReport(data, report);
+		data.flush();
+	}
+
+	private static void writeReport(DataOutput out, BatchPipeline.Report report) throws IOException {
+		out.writeInt(report.files());
+		out.writeInt(report.services());
+		out.writeInt(report.skipped());
+		out.writeLong(report.states());
+		out.writeLong(report.edges());
+		out.writeInt(report.cacheHits());
+		out.writeInt(report.cacheMisses());
+		out.writeLong(report.peakHeap());
+		out.writeInt(report.failures().size());
+		for (String failure : report.failures()) ShardCoordinator.writeString(out, failure);
+	}
+
+	private static BatchPipeline.Report readReport(DataInput in) throws IOException {
+		int files = in.readInt(), services = in.readInt(), skipped = in.readInt();
+		long states = in.readLong(), edges = in.readLong();
+		int cacheHits = in.readInt(), cacheMisses = in.readInt();
+		long peakHeap = in.readLong();
+		int count = in.readInt();
+		if (count < 0) throw new IOException("Invalid failure count " + count);
+		List<String> failures = new ArrayList<>();
+		for (int i = 0; i < count; i++) failures.add(ShardCoordinator.readString(in));
+		return new BatchPipeline.Report(files, services, skipped, states, edges, cacheHits, cacheMisses, peakHeap, failures);
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) throw new IOException("Invalid string length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,172 @@
+package it.unibo.tesi.chorol.visitor.flow;
+
+import it.unibo.tesi.chorol.visitor.expression.ExprEvaluator;
+import it.unibo.tesi.chorol.visitor.expression.ExprVisitor;
+import jolie.lang.parse.ast.*;
+import jolie.lang.parse.ast.expression.OrConditionNode;
+import jolie.util.Pair;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash-consing dei sottoalberi dell'AST: due nodi strutturalmente uguali ricevono lo stesso id.
+ * La chiave di un nodo contiene gli id dei figli, quindi ha dimensione costante per nodo.
+ * I nodi il cui grafo dipende dal FlowContext (scope, install, throw, spawn, ...) non hanno chiave,
+ * e con loro tutti i nodi che li contengono; lo stesso vale per le chiamate a procedure ricorsive
+ * o il cui corpo non ha chiave. Le costanti note non fanno parte della chiave: la memo le aggiunge a parte.
+ */
+final class StructuralKeys {
+	static final int NONE = -1;
+	private static final String ABSENT = "-";
+
+	private final Map<String, DefinitionNode> definitions;
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final Map<OLSyntaxNode, Integer> nodes = new IdentityHashMap<>();
+	private final Set<String> calling = new HashSet<>();
+
+	StructuralKeys(Map<String, DefinitionNode> definitions) {
+		this.definitions = definitions;
+	}
+
+	int keyOf(OLSyntaxNode node) {
+		if (node == null) return StructuralKeys.NONE;
+		Integer cached = this.nodes.get(node);
+		if (cached != null) return cached;
+		String key = this.describe(node);
+		int id = key == null ? StructuralKeys.NONE : this.ids.computeIfAbsent(key, k -> this.ids.size());
+		this.nodes.put(node, id);
+		return id;
+	}
+
+	void clear() {
+		this.ids.clear();
+		this.nodes.clear();
+		this.calling.clear();
+	}
+
+	private String describe(OLSyntaxNode node) {
+		if (node instanceof OneWayOperationStatement n) return "OW|" + n.id() + "|" + StructuralKeys.path(n.inputVarPath());
+		if (node instanceof RequestResponseOperationStatement n)
+			return this.compose("RR|" + n.id() + "|" + StructuralKeys.path(n.inputVarPath()), n.process());
+		if (node instanceof NotificationOperationStatement n) return "N|" + n.id() + "@" + n.outputPortId();
+		if (node instanceof SolicitResponseOperationStatement n)
+			return "SR|" + n.id() + "@" + n.outputPortId() + "|" + StructuralKeys.path(n.inputVarPath());
+		if (node instanceof DefinitionCallStatement n) return this.describeCall(n);
+		if (node instanceof SequenceStatement n) return this.compose("SEQ", n.children());
+		if (node instanceof ParallelStatement n) return this.compose("PAR", n.children());
+		if (node instanceof NDChoiceStatement n) return this.composePairs("ND", n.children(), false);
+		if (node instanceof IfStatement n) {
+			String branches = this.composePairs("IF", n.children(), true);
+			return branches == null || (n.elseProcess() != null && this.keyOf(n.elseProcess()) == StructuralKeys.NONE)
+					       ? null
+					       : branches + "|" + (n.elseProcess() == null ? StructuralKeys.ABSENT : this.keyOf(n.elseProcess()));
+		}
+		if (node instanceof WhileStatement n) return this.compose("WHILE", n.body());
+		if (node instanceof ForStatement n) {
+			String init = this.optional(n.init()), post = this.optional(n.post());
+			return init == null || post == null ? null : this.compose("FOR|" + init + "|" + post, n.body());
+		}
+		if (node instanceof ForEachArrayItemStatement n)
+			return this.compose("FEA|" + StructuralKeys.path(n.keyPath()), n.body());
+		if (node instanceof ForEachSubNodeStatement n)
+			return this.compose("FES|" + StructuralKeys.path(n.keyPath()), n.body());
+		if (node instanceof SynchronizedStatement n) return this.compose("SYNC", n.body());
+		if (node instanceof NullProcessStatement) return "NULL";
+		if (node instanceof ExitStatement) return "EXIT";
+		return StructuralKeys.describeSilent(node);
+	}
+
+	/**
+	 * Una chiamata ha la chiave del corpo della procedura: se il corpo dipende dal contesto, o la procedura
+	 * è ricorsiva (la chiamata interna dipende da quali procedure sono in visita), la chiamata non ha chiave.
+	 */
+	private String describeCall(DefinitionCallStatement node) {
+		DefinitionNode definition = this.definitions.get(node.id());
+		if (definition == null) return "CALL|" + node.id();
+		if (!this.calling.add(node.id())) return null;
+		int body = this.keyOf(definition.body());
+		this.calling.remove(node.id());
+		return body == StructuralKeys.NONE ? null : "CALL|" + node.id();
+	}
+
+	/**
+	 * Nodi che non possono generare chiamate: il loro grafo è sempre null, ma la chiave
+	 * deve descriverne l'effetto sulle costanti note.
+	 */
+	private static String describeSilent(OLSyntaxNode node) {
+		if (node instanceof AssignStatement n)
+			return "SET|" + StructuralKeys.path(n.variablePath()) + "|" + ExprEvaluator.describe(n.expression());
+		if (node instanceof AddAssignStatement n)
+			return "ADD|" + StructuralKeys.path(n.variablePath()) + "|" + ExprEvaluator.describe(n.expression());
+		if (node instanceof SubtractAssignStatement n)
+			return "SUB|" + StructuralKeys.path(n.variablePath()) + "|" + ExprEvaluator.describe(n.expression());
+		if (node instanceof MultiplyAssignStatement n)
+			return "MUL|" + StructuralKeys.path(n.variablePath()) + "|" + ExprEvaluator.describe(n.expression());
+		if (node instanceof DivideAssignStatement n)
+			return "DIV|" + StructuralKeys.path(n.variablePath()) + "|" + ExprEvaluator.describe(n.expression());
+		if (node instanceof PreIncrementStatement n) return "INC|" + StructuralKeys.path(n.variablePath());
+		if (node instanceof PostIncrementStatement n) return "INC|" + StructuralKeys.path(n.variablePath());
+		if (node instanceof PreDecrementStatement n) return "DEC|" + StructuralKeys.path(n.variablePath());
+		if (node instanceof PostDecrementStatement n) return "DEC|" + StructuralKeys.path(n.variablePath());
+		if (node instanceof DeepCopyStatement n) return "KILL|" + StructuralKeys.path(n.leftPath());
+		if (node instanceof UndefStatement n) return "KILL|" + StructuralKeys.path(n.variablePath());
+		return null;
+	}
+
+	private static String path(VariablePathNode path) {
+		if (path == null) return StructuralKeys.ABSENT;
+		String text = path.toPrettyString();
+		return text.length() + ":" + text;
+	}
+
+	/**
+	 * Chiave di un figlio facoltativo; null se il figlio c'è ma non ha chiave.
+	 */
+	private String optional(OLSyntaxNode node) {
+		if (node == null) return StructuralKeys.ABSENT;
+		int id = this.keyOf(node);
+		return id == StructuralKeys.NONE ? null : String.valueOf(id);
+	}
+
+	private String compose(String head, OLSyntaxNode child) {
+		int id = this.keyOf(child);
+		return id == StructuralKeys.NONE ? null : head + "|" + id;
+	}
+
+	private String compose(String head, List<OLSyntaxNode> children) {
+		StringBuilder key = new StringBuilder(head);
+		for (OLSyntaxNode child : children) {
+			int id = this.keyOf(child);
+			if (id == StructuralKeys.NONE) return null;
+			key.append('|').append(id);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Coppie (chiave, corpo); per gli IF la chiave è la condizione, che compare nell'etichetta della guardia.
+	 */
+	private String composePairs(String head, List<Pair<OLSyntaxNode, OLSyntaxNode>> children, boolean conditions) {
+		StringBuilder key = new StringBuilder(head);
+		for (Pair<OLSyntaxNode, OLSyntaxNode> child : children) {
+			int body = this.keyOf(child.value());
+			if (body == StructuralKeys.NONE) return null;
+			if (conditions) {
+				String condition = new ExprVisitor().visit((OrConditionNode) child.key(), null);
+				key.append('|').append(condition.length()).append(':').append(condition)
+						.append('|').append(ExprEvaluator.describe(child.key()));
+			} else {
+				int guard = this.keyOf(child.key());
+				if (guard == StructuralKeys.NONE) return null;
+				key.append('|').append(guard);
+			}
+			key.append('|').append(body);
+		}
+		return key.toString();
+	}
+}
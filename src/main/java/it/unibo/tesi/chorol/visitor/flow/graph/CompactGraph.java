@@ -0,0 +1,369 @@
+package it.unibo.tesi.chorol.visitor.flow.graph;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rappresentazione compatta e immutabile di un FlowGraph: stati numerati da 0,
+ * archi in formato CSR ordinati per (etichetta, destinazione) ed etichette internate
+ * in un alfabeto ordinato, per cui l'ordine degli id coincide con quello delle stringhe.
+ */
+public final class CompactGraph {
+	public static final int EPSILON = -1;
+
+	private final StateType[] types;
+	private final String[] alphabet;
+	private final int[] offsets;
+	private final int[] labels;
+	private final int[] targets;
+	private final int start;
+	private final int end;
+	private String fingerprint;
+
+	private CompactGraph(StateType[] types, String[] alphabet, int[] offsets, int[] labels, int[] targets, int start, int end) {
+		this.types = types;
+		this.alphabet = alphabet;
+		this.offsets = offsets;
+		this.labels = labels;
+		this.targets = targets;
+		this.start = start;
+		this.end = end;
+	}
+
+	public static CompactGraph of(FlowGraph flowGraph) {
+		Builder builder = new Builder();
+		Map<State, Integer> index = new HashMap<>();
+		for (State s : flowGraph.vertexSet())
+			index.put(s, builder.addState(s.getStateType()));
+		for (RequestEdge edge : flowGraph.edgeSet())
+			builder.addEdge(index.get(flowGraph.getEdgeSource(edge)), edge.getLabel(), index.get(flowGraph.getEdgeTarget(edge)));
+		builder.setStart(flowGraph.getStartNode() == null ? 0 : index.get(flowGraph.getStartNode()));
+		builder.setEnd(flowGraph.getEndNode() == null ? builder.start : index.get(flowGraph.getEndNode()));
+		return builder.build();
+	}
+
+	public static boolean isEpsilon(String label) {
+		return label == null || label.isEmpty();
+	}
+
+	/**
+	 * Ricostruisce un FlowGraph con stati nuovi, nell'ordine degli indici.
+	 */
+	public FlowGraph toFlowGraph() {
+		return this.toFlowGraph(new State[this.size()]);
+	}
+
+	/**
+	 * Come {@link #toFlowGraph()}, riempiendo {@code mapping} con lo stato creato per ogni indice.
+	 */
+	public FlowGraph toFlowGraph(State[] mapping) {
+		FlowGraph flowGraph = new FlowGraph();
+		for (int s = 0; s < this.size(); s++) {
+			mapping[s] = State.createState();
+			mapping[s].setStateType(this.types[s]);
+			flowGraph.addVertex(mapping[s]);
+		}
+		for (int s = 0; s < this.size(); s++)
+			for (int e = this.firstEdge(s); e < this.lastEdge(s); e++) {
+				int label = this.labels[e];
+				flowGraph.addEdge(mapping[s], mapping[this.targets[e]],
+						label == CompactGraph.EPSILON ? new RequestEdge() : new RequestEdge(this.alphabet[label]));
+			}
+		if (this.size() > 0) {
+			flowGraph.setStartNode(mapping[this.start]);
+			flowGraph.setEndNode(mapping[this.end]);
+		}
+		return flowGraph;
+	}
+
+	public int size() {
+		return this.types.length;
+	}
+
+	public int edgeCount() {
+		return this.targets.length;
+	}
+
+	/**
+	 * Stima dei byte occupati sullo heap: gli array per stato e per arco e le stringhe dell'alfabeto.
+	 */
+	public long bytes() {
+		long bytes = 96 + 4L * (this.types.length + this.offsets.length + this.labels.length + this.targets.length);
+		for (String symbol : this.alphabet) bytes += 48 + symbol.length();
+		return bytes;
+	}
+
+	public int start() {
+		return this.start;
+	}
+
+	public int end() {
+		return this.end;
+	}
+
+	public StateType type(int state) {
+		return this.types[state];
+	}
+
+	public int alphabetSize() {
+		return this.alphabet.length;
+	}
+
+	public String symbol(int label) {
+		return label == CompactGraph.EPSILON ? null : this.alphabet[label];
+	}
+
+	/**
+	 * Id dell'etichetta, oppure un valore negativo se non appartiene all'alfabeto.
+	 */
+	public int labelId(String symbol) {
+		if (CompactGraph.isEpsilon(symbol)) return CompactGraph.EPSILON;
+		int id = Arrays.binarySearch(this.alphabet, symbol);
+		return id >= 0 ? id : -2;
+	}
+
+	public int firstEdge(int state) {
+		return this.offsets[state];
+	}
+
+	public int lastEdge(int state) {
+		return this.offsets[state + 1];
+	}
+
+	public int label(int edge) {
+		return this.labels[edge];
+	}
+
+	public int target(int edge) {
+		return this.targets[edge];
+	}
+
+	/**
+	 * Numerazione canonica degli stati: visita in ampiezza dallo stato iniziale seguendo gli archi nell'ordine
+	 * delle etichette internate; -1 per gli stati non raggiungibili. Due DFA minimi che riconoscono lo stesso
+	 * linguaggio ottengono la stessa numerazione, indipendentemente da come sono stati costruiti.
+	 */
+	public int[] canonicalOrder() {
+		int[] order = new int[this.size()];
+		Arrays.fill(order, -1);
+		if (this.size() == 0) return order;
+		int[] queue = new int[this.size()];
+		int head = 0, tail = 0;
+		order[this.start] = tail;
+		queue[tail++] = this.start;
+		while (head < tail) {
+			int s = queue[head++];
+			for (int e = this.offsets[s]; e < this.offsets[s + 1]; e++) {
+				int t = this.targets[e];
+				if (order[t] >= 0) continue;
+				order[t] = tail;
+				queue[tail++] = t;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Copia rinumerata secondo {@link #canonicalOrder()}, senza gli stati non raggiungibili
+	 * (tranne quello finale, che resta in fondo).
+	 */
+	public CompactGraph canonical() {
+		int[] order = this.canonicalOrder();
+		int reachable = (int) Arrays.stream(order).filter(index -> index >= 0).count();
+		if (this.size() > 0 && order[this.end] < 0) order[this.end] = reachable++;
+		int[] states = new int[reachable];
+		for (int s = 0; s < this.size(); s++)
+			if (order[s] >= 0) states[order[s]] = s;
+
+		Builder builder = new Builder();
+		for (int s : states) builder.addState(this.types[s]);
+		for (int s : states)
+			for (int e = this.offsets[s]; e < this.offsets[s + 1]; e++)
+				builder.addEdge(order[s], this.symbol(this.labels[e]), order[this.targets[e]]);
+		if (this.size() > 0) {
+			builder.setStart(order[this.start]);
+			builder.setEnd(order[this.end]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Impronta a 128 bit (MD5, in esadecimale) della forma canonica: tipi degli stati, etichette e archi.
+	 * Grafi con la stessa impronta descrivono lo stesso protocollo e si possono confrontare senza visitarli.
+	 */
+	public String fingerprint() {
+		if (this.fingerprint == null) {
+			CompactGraph canonical = this.canonical();
+			try {
+				MessageDigest md5 = MessageDigest.getInstance("MD5");
+				DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md5));
+				canonical.write(out);
+				out.flush();
+				this.fingerprint = String.format("%032x", new BigInteger(1, md5.digest()));
+			} catch (NoSuchAlgorithmException | IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return this.fingerprint;
+	}
+
+	/**
+	 * Forma binaria del grafo: tipi degli stati, alfabeto in UTF-8, array CSR, stato iniziale e finale.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(this.types.length);
+		for (StateType type : this.types) out.writeByte(type.ordinal());
+		out.writeInt(this.alphabet.length);
+		for (String symbol : this.alphabet) {
+			byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		for (int offset : this.offsets) out.writeInt(offset);
+		out.writeInt(this.targets.length);
+		for (int e = 0; e < this.targets.length; e++) {
+			out.writeInt(this.labels[e]);
+			out.writeInt(this.targets[e]);
+		}
+		out.writeInt(this.start);
+		out.writeInt(this.end);
+	}
+
+	/**
+	 * Legge un grafo scritto da {@link #write}; lancia IOException se i dati non sono coerenti.
+	 */
+	public static CompactGraph read(DataInput in) throws IOException {
+		StateType[] values = StateType.values();
+		int n = in.readInt();
+		if (n < 0) throw new IOException("Invalid state count " + n);
+		StateType[] types = new StateType[n];
+		for (int s = 0; s < n; s++) {
+			int ordinal = in.readUnsignedByte();
+			if (ordinal >= values.length) throw new IOException("Invalid state type " + ordinal);
+			types[s] = values[ordinal];
+		}
+		int size = in.readInt();
+		if (size < 0) throw new IOException("Invalid alphabet size " + size);
+		String[] alphabet = new String[size];
+		for (int i = 0; i < size; i++) {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			alphabet[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		int[] offsets = new int[n + 1];
+		for (int s = 0; s <= n; s++) offsets[s] = in.readInt();
+		int m = in.readInt();
+		if (m < 0 || offsets[n] != m) throw new IOException("Invalid edge count " + m);
+		int[] labels = new int[m];
+		int[] targets = new int[m];
+		for (int e = 0; e < m; e++) {
+			labels[e] = in.readInt();
+			targets[e] = in.readInt();
+			if (labels[e] < CompactGraph.EPSILON || labels[e] >= size || targets[e] < 0 || targets[e] >= n)
+				throw new IOException("Invalid edge " + e);
+		}
+		int start = in.readInt();
+		int end = in.readInt();
+		if (n > 0 && (start < 0 || start >= n || end < 0 || end >= n)) throw new IOException("Invalid start or end state");
+		return new CompactGraph(types, alphabet, offsets, labels, targets, start, end);
+	}
+
+	/**
+	 * Costruttore incrementale: le etichette vengono internate e ordinate in {@link #build()}.
+	 */
+	public static final class Builder {
+		private final List<StateType> types = new ArrayList<>();
+		private final List<String> edgeLabels = new ArrayList<>();
+		private int[] edgeSources = new int[16];
+		private int[] edgeTargets = new int[16];
+		private int start;
+		private int end = -1;
+
+		public int addState(StateType type) {
+			this.types.add(type);
+			return this.types.size() - 1;
+		}
+
+		public void addEdge(int source, String label, int target) {
+			int e = this.edgeLabels.size();
+			if (e == this.edgeSources.length) {
+				this.edgeSources = Arrays.copyOf(this.edgeSources, e * 2);
+				this.edgeTargets = Arrays.copyOf(this.edgeTargets, e * 2);
+			}
+			this.edgeSources[e] = source;
+			this.edgeTargets[e] = target;
+			this.edgeLabels.add(CompactGraph.isEpsilon(label) ? null : label);
+		}
+
+		public int size() {
+			return this.types.size();
+		}
+
+		public int edgeCount() {
+			return this.edgeLabels.size();
+		}
+
+		public void setStart(int start) {
+			this.start = start;
+		}
+
+		public void setEnd(int end) {
+			this.end = end;
+		}
+
+		public CompactGraph build() {
+			int n = this.types.size();
+			int m = this.edgeLabels.size();
+			String[] alphabet = this.edgeLabels.stream().filter(Objects::nonNull).distinct().sorted().toArray(String[]::new);
+
+			// bucket per sorgente, poi ordinamento per (etichetta, destinazione) ed eliminazione dei duplicati
+			int[] offsets = new int[n + 1];
+			for (int e = 0; e < m; e++) offsets[this.edgeSources[e] + 1]++;
+			for (int s = 0; s < n; s++) offsets[s + 1] += offsets[s];
+			long[] keys = new long[m];
+			int[] fill = Arrays.copyOf(offsets, n);
+			for (int e = 0; e < m; e++) {
+				String label = this.edgeLabels.get(e);
+				int id = label == null ? CompactGraph.EPSILON : Arrays.binarySearch(alphabet, label);
+				keys[fill[this.edgeSources[e]]++] = ((long) (id + 1) << 32) | this.edgeTargets[e];
+			}
+
+			int[] labels = new int[m];
+			int[] targets = new int[m];
+			int count = 0;
+			for (int s = 0; s < n; s++) {
+				int from = offsets[s];
+				int to = offsets[s + 1];
+				Arrays.sort(keys, from, to);
+				offsets[s] = count;
+				for (int e = from; e < to; e++) {
+					if (e > from && keys[e] == keys[e - 1]) continue;
+					labels[count] = (int) (keys[e] >>> 32) - 1;
+					targets[count] = (int) keys[e];
+					count++;
+				}
+			}
+			offsets[n] = count;
+
+			return new CompactGraph(
+					this.types.toArray(new StateType[0]),
+					alphabet,
+					offsets,
+					Arrays.copyOf(labels, count),
+					Arrays.copyOf(targets, count),
+					this.start,
+					this.end < 0 ? this.start : this.end
+			);
+		}
+	}
+}
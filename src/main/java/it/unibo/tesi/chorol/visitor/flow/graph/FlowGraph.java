@@ -3,16 +3,20 @@ package it.unibo.tesi.chorol.visitor.flow.graph;
 import it.unibo.tesi.chorol.symbols.interfaces.operations.OneWayOperation;
 import it.unibo.tesi.chorol.symbols.interfaces.operations.Operation;
 import it.unibo.tesi.chorol.symbols.interfaces.operations.ReqResOperation;
-import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DirectedPseudograph;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import java.util.*;
 
 import static it.unibo.tesi.chorol.visitor.flow.graph.State.createState;
 
-public class FlowGraph extends DefaultDirectedGraph<State, RequestEdge> {
+/**
+ * Grafo delle richieste: ammette archi paralleli, purché con etichette diverse.
+ */
+public class FlowGraph extends DirectedPseudograph<State, RequestEdge> {
+	// epsilon prima di ogni etichetta, poi ordine delle stringhe, come nell'alfabeto di CompactGraph
+	private static final Comparator<RequestEdge> LABEL_ORDER =
+			Comparator.comparing(edge -> CompactGraph.isEpsilon(edge.getLabel()) ? null : edge.getLabel(),
+					Comparator.nullsFirst(Comparator.naturalOrder()));
 	private State startNode;
 	private State endNode;
 
@@ -69,10 +73,23 @@ public class FlowGraph extends DefaultDirectedGraph<State, RequestEdge> {
 			State target = o.getEdgeTarget(edge);
 			if (!this.vertexSet().contains(source)) this.addVertex(source);
 			if (!this.vertexSet().contains(target)) this.addVertex(target);
-			if (!this.containsEdge(source, target)) this.addEdge(source, target).setLabel(edge.getLabel());
+			this.addEdge(source, target, edge.getLabel());
 		});
 	}
 
+	/**
+	 * Aggiunge un arco etichettato, a meno che tra i due stati ne esista già uno con la stessa etichetta.
+	 */
+	public boolean addEdge(State source, State target, String label) {
+		if (this.containsEdge(source, target, label)) return false;
+		return this.addEdge(source, target, new RequestEdge(label));
+	}
+
+	public boolean containsEdge(State source, State target, String label) {
+		Set<RequestEdge> edges = this.getAllEdges(source, target);
+		return edges != null && edges.stream().anyMatch(edge -> Objects.equals(edge.getLabel(), label));
+	}
+
 	public FlowGraph joinAfter(FlowGraph o) {
 		if (o == null) return this;
 
@@ -84,7 +101,7 @@ public class FlowGraph extends DefaultDirectedGraph<State, RequestEdge> {
 
 //		if (o.getStartNode() == null) o.setStartNode(createState());
 		this.copyGraph(o);
-		this.addEdge(this.endNode, o.getStartNode());
+		this.addEdge(this.endNode, o.getStartNode(), (String) null);
 		this.setEndNode(o.getEndNode());
 		return this;
 	}
@@ -102,21 +119,28 @@ public class FlowGraph extends DefaultDirectedGraph<State, RequestEdge> {
 
 		if (o.getStartNode() == null) o.setStartNode(createState());
 		if (o.getEndNode() == null) o.setEndNode(createState());
-		if (this.containsEdge(this.startNode, this.endNode)) this.removeEdge(this.startNode, this.endNode);
+		// toglie solo la epsilon segnaposto tra inizio e fine, non eventuali archi etichettati
+		this.removeEpsilon(this.startNode, this.endNode);
 
 		this.copyGraph(o);
 
-		if (!this.containsEdge(this.startNode, o.getStartNode())) {
-			this.addEdge(this.startNode, o.getStartNode());
-			this.getEdge(this.startNode, o.getStartNode()).setLabel(label);
-		}
+		this.addEdge(this.startNode, o.getStartNode(), label);
 
-		if (!this.containsEdge(o.getEndNode(), this.endNode) &&
-				    !o.getEndNode().getStateType().equals(StateType.END) &&
+		if (!o.getEndNode().getStateType().equals(StateType.END) &&
 				    !o.getEndNode().getStateType().equals(StateType.EXIT))
-			this.addEdge(o.getEndNode(), this.endNode);
+			this.addEdge(o.getEndNode(), this.endNode, (String) null);
 	}
 
+	private void removeEpsilon(State source, State target) {
+		Set<RequestEdge> edges = this.getAllEdges(source, target);
+		if (edges == null) return;
+		edges.stream().filter(edge -> edge.getLabel() == null).findFirst().ifPresent(this::removeEdge);
+	}
+
+	/**
+	 * Numera gli stati in ampiezza seguendo gli archi in ordine di etichetta, come {@link CompactGraph#canonicalOrder()}:
+	 * su un DFA minimo la numerazione non dipende dall'ordine in cui jgrapht restituisce gli archi.
+	 */
 	public void relabelNodesBFS() {
 		if (this.getStartNode() == null) return;
 		Set<State> visited = new HashSet<>();
@@ -128,7 +152,7 @@ public class FlowGraph extends DefaultDirectedGraph<State, RequestEdge> {
 		while (!queue.isEmpty()) {
 			State current = queue.poll();
 			if (!current.getStateType().equals(StateType.SERVICE)) current.setLabel(String.valueOf(counter++));
-			this.outgoingEdgesOf(current).forEach(edge -> {
+			this.outgoingEdgesOf(current).stream().sorted(FlowGraph.LABEL_ORDER).forEach(edge -> {
 				State neighbor = this.getEdgeTarget(edge);
 				if (!visited.contains(neighbor)) {
 					visited.add(neighbor);
@@ -138,6 +162,13 @@ public class FlowGraph extends DefaultDirectedGraph<State, RequestEdge> {
 		}
 	}
 
+	/**
+	 * Impronta a 128 bit del grafo (vedi {@link CompactGraph#fingerprint()}).
+	 */
+	public String fingerprint() {
+		return CompactGraph.of(this).fingerprint();
+	}
+
 	public void replace(FlowGraph o) {
 		this.edgeSet().stream().toList().forEach(this::removeEdge);
 		this.vertexSet().stream().toList().forEach(this::removeVertex);
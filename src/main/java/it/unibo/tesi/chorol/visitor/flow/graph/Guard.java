@@ -0,0 +1,174 @@
+package it.unibo.tesi.chorol.visitor.flow.graph;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Predicato di una guardia, in forma normale disgiuntiva sulle condizioni atomiche (il testo delle condizioni).
+ * Nelle etichette il predicato segue il testo mostrato, separato da un carattere riservato:
+ * così sopravvive a ogni conversione tra FlowGraph e CompactGraph, e l'export mostra solo il testo.
+ */
+public final class Guard {
+	private static final char MARKER = '\u0001';
+	private static final int CACHE_SIZE = 4096;
+	private static final Map<String, Guard> cache = new ConcurrentHashMap<>();
+
+	// congiunzioni di letterali (atomo -> polarità), in ordine canonico
+	private final List<SortedMap<String, Boolean>> cubes;
+	private final String key;
+
+	private Guard(List<SortedMap<String, Boolean>> cubes) {
+		this.cubes = cubes;
+		StringBuilder key = new StringBuilder();
+		cubes.forEach(cube -> key.append(Guard.encode(cube)));
+		this.key = key.toString();
+	}
+
+	/**
+	 * Congiunzione dei letterali indicati.
+	 */
+	public static Guard cube(Map<String, Boolean> literals) {
+		return new Guard(List.of(new TreeMap<>(literals)));
+	}
+
+	/**
+	 * Disgiunzione delle congiunzioni indicate, semplificata fondendo le coppie che differiscono
+	 * per un solo letterale e rimuovendo le congiunzioni assorbite.
+	 */
+	public static Guard of(Collection<? extends Map<String, Boolean>> cubes) {
+		Set<SortedMap<String, Boolean>> current = new HashSet<>();
+		cubes.forEach(cube -> current.add(new TreeMap<>(cube)));
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			Set<SortedMap<String, Boolean>> next = new HashSet<>();
+			Set<SortedMap<String, Boolean>> used = new HashSet<>();
+			for (SortedMap<String, Boolean> cube : current)
+				for (Map.Entry<String, Boolean> literal : cube.entrySet()) {
+					SortedMap<String, Boolean> flipped = new TreeMap<>(cube);
+					flipped.put(literal.getKey(), !literal.getValue());
+					if (!current.contains(flipped)) continue;
+					SortedMap<String, Boolean> reduced = new TreeMap<>(cube);
+					reduced.remove(literal.getKey());
+					next.add(reduced);
+					used.add(cube);
+					used.add(flipped);
+					merged = true;
+				}
+			current.stream().filter(cube -> !used.contains(cube)).forEach(next::add);
+			current.clear();
+			current.addAll(next);
+		}
+		return new Guard(current.stream()
+				                 .filter(cube -> !Guard.absorbed(cube, current))
+				                 .sorted(Comparator.comparing(Guard::encode))
+				                 .toList());
+	}
+
+	/**
+	 * Vero se una congiunzione più corta implica già {@code cube}.
+	 */
+	private static boolean absorbed(SortedMap<String, Boolean> cube, Set<SortedMap<String, Boolean>> cubes) {
+		return cubes.stream().anyMatch(other -> other.size() < cube.size() && cube.entrySet().containsAll(other.entrySet()));
+	}
+
+	/**
+	 * Etichetta di un arco di guardia: testo mostrato seguito dal predicato.
+	 */
+	public static String label(String display, Guard guard) {
+		return display + Guard.MARKER + guard.key;
+	}
+
+	public static boolean isGuard(String label) {
+		return label != null && label.indexOf(Guard.MARKER) >= 0;
+	}
+
+	/**
+	 * Predicato di un'etichetta di guardia, null per le altre etichette.
+	 */
+	public static Guard parse(String label) {
+		if (!Guard.isGuard(label)) return null;
+		Guard guard = Guard.cache.get(label);
+		if (guard == null) {
+			if (Guard.cache.size() >= Guard.CACHE_SIZE) Guard.cache.clear();
+			guard = new Guard(Guard.decode(label.substring(label.indexOf(Guard.MARKER) + 1)));
+			Guard.cache.put(label, guard);
+		}
+		return guard;
+	}
+
+	/**
+	 * Testo mostrato di un'etichetta, senza il predicato.
+	 */
+	public static String display(String label) {
+		if (!Guard.isGuard(label)) return label;
+		return label.substring(0, label.indexOf(Guard.MARKER));
+	}
+
+	public Set<String> atoms() {
+		Set<String> atoms = new TreeSet<>();
+		this.cubes.forEach(cube -> atoms.addAll(cube.keySet()));
+		return atoms;
+	}
+
+	public List<SortedMap<String, Boolean>> cubes() {
+		return this.cubes;
+	}
+
+	public String key() {
+		return this.key;
+	}
+
+	/**
+	 * Testo leggibile del predicato, ad esempio "[a && !(b)]".
+	 */
+	public String describe() {
+		StringJoiner disjunction = new StringJoiner(" || ", "[", "]");
+		for (SortedMap<String, Boolean> cube : this.cubes) {
+			StringJoiner conjunction = new StringJoiner(" && ");
+			cube.forEach((atom, positive) -> conjunction.add(positive ? atom : "!(" + atom + ")"));
+			disjunction.add(cube.isEmpty() ? "true" : conjunction.toString());
+		}
+		return this.cubes.isEmpty() ? "[false]" : disjunction.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Guard other && this.key.equals(other.key);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.describe();
+	}
+
+	private static String encode(SortedMap<String, Boolean> cube) {
+		StringBuilder key = new StringBuilder("(");
+		cube.forEach((atom, positive) -> key.append(positive ? '+' : '-').append(atom.length()).append(':').append(atom));
+		return key.append(')').toString();
+	}
+
+	private static List<SortedMap<String, Boolean>> decode(String key) {
+		List<SortedMap<String, Boolean>> cubes = new ArrayList<>();
+		int i = 0;
+		while (i < key.length()) {
+			SortedMap<String, Boolean> cube = new TreeMap<>();
+			i++;
+			while (key.charAt(i) != ')') {
+				boolean positive = key.charAt(i++) == '+';
+				int colon = key.indexOf(':', i);
+				int length = Integer.parseInt(key.substring(i, colon));
+				cube.put(key.substring(colon + 1, colon + 1 + length), positive);
+				i = colon + 1 + length;
+			}
+			i++;
+			cubes.add(cube);
+		}
+		return cubes;
+	}
+}
@@ -36,6 +36,6 @@ public class RequestEdge extends DefaultEdge {
 
 	@Override
 	public String toString() {
-		return this.label == null ? "" : this.label;
+		return this.label == null ? "" : Guard.display(this.label);
 	}
 }
\ No newline at end of file
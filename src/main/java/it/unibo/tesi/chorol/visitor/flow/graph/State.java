@@ -1,7 +1,10 @@
 package it.unibo.tesi.chorol.visitor.flow.graph;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class State {
-	private static int stateCounter = 0;
+	// gli stati possono essere creati da più analisi in parallelo (vedi BatchPipeline)
+	private static final AtomicInteger stateCounter = new AtomicInteger();
 	private final String id;
 	private boolean isMain;
 	private String label;
@@ -15,7 +18,7 @@ public class State {
 	}
 
 	public static State createState() {
-		return new State(Integer.toString(State.stateCounter++), null);
+		return new State(Integer.toString(State.stateCounter.getAndIncrement()), null);
 	}
 
 	public String getId() {